@@ -0,0 +1,197 @@
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Runs many independent realisations of a small system in one JVM, so startup and JIT warm-up are paid once.
+ * <pre>
+ *   java BatchSimulator N L realisations duration inputDir outputDir [--first=0] [--workers=cores]
+ *        [--active=4] [--slice=256] [--speed=0.01] [--radius=0.0015] [--species=...] [--seed=n] [--stats] [--skin=...]
+ * </pre>
+ * Each worker thread owns up to {@code active} realisations with their own engine and event queue and advances
+ * them round-robin, {@code slice} events at a time; a finished realisation is replaced by the next pending one.
+ * Realisations are read from inputDir when their input exists and generated in memory otherwise.
+ * <p>
+ * Wall collisions of every realisation go to one shared file, outputDir/N_&lt;N&gt;_L&lt;L&gt;/batch_..._collisions.csv,
+ * with the collisions columns of {@link OutputWriter} prefixed by the realisation: "realisation,time,wall,speed".
+ * Workers format into their own {@link CsvFormatter} buffers and only share the file channel.
+ * Frames are not written; with --stats the {@link EventStatistics} of all realisations are merged into one file.
+ */
+public class BatchSimulator {
+
+    private final int N;
+    private final double L;
+    private final int duration;
+    private final String inputDir;
+    private final SimulationOptions options;
+    private final int active, slice;
+    private final Generator generator;
+    private final AtomicInteger next;
+    private final int end;
+    private final AtomicLong events = new AtomicLong();
+    private final EventStatistics statistics;
+
+    /** One realisation, only touched by the worker that loaded it. */
+    private record Run(int realisation, CollisionSystemPriorityQueue engine) {
+    }
+
+    public BatchSimulator(int N, double L, int first, int realisations, int duration, String inputDir, SimulationOptions options) {
+        this.N = N;
+        this.L = L;
+        this.duration = duration;
+        this.inputDir = inputDir;
+        this.options = options;
+        this.active = options.getInt("active", 4);
+        this.slice = options.getInt("slice", 256);
+        if (active <= 0 || slice <= 0) throw new IllegalArgumentException("--active and --slice should be positive");
+        this.generator = Generator.create(N, SweepOrchestrator.BOARD_SIZE, options.getDouble("speed", 0.01),
+                options.getDouble("radius", 0.0015), options);
+        this.next = new AtomicInteger(first);
+        this.end = first + realisations;
+        this.statistics = options.statistics() ? new EventStatistics(0) : null;
+    }
+
+    public static Path collisionsPath(String outputDir, int N, double L, int duration) {
+        String L_dir = String.format(Locale.US, "L%.3f", L);
+        return Path.of(outputDir, "N_" + N + "_" + L_dir, String.format("batch_N%d_%s_t%d_collisions.csv", N, L_dir, duration));
+    }
+
+    /** Runs every realisation on {@code workers} threads and returns the number of processed events. */
+    public long run(Path collisionsPath, int workers) throws IOException, InterruptedException {
+        Files.createDirectories(collisionsPath.getParent());
+        try (FileChannel channel = FileChannel.open(collisionsPath, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            ExecutorService pool = Executors.newFixedThreadPool(workers);
+            List<Future<?>> futures = new ArrayList<>();
+            for (int w = 0; w < workers; w++) {
+                futures.add(pool.submit(() -> {
+                    work(channel);
+                    return null;
+                }));
+            }
+            pool.shutdown();
+            try {
+                for (Future<?> future : futures) future.get();
+            } catch (ExecutionException e) {
+                pool.shutdownNow();
+                throw new IOException("Batch worker failed", e.getCause());
+            }
+        }
+        if (statistics != null) {
+            String name = collisionsPath.getFileName().toString().replace("_collisions.csv", ".csv");
+            statistics.write(EventStatistics.pathFor(collisionsPath.resolveSibling(name)));
+        }
+        return events.get();
+    }
+
+    private void work(FileChannel channel) throws IOException {
+        List<Run> runs = new ArrayList<>(active);
+        try (CsvFormatter csv = new CsvFormatter(channel)) {
+            while (true) {
+                while (runs.size() < active) {
+                    Run run = load();
+                    if (run == null) break;
+                    runs.add(run);
+                }
+                if (runs.isEmpty()) return;
+                for (Iterator<Run> it = runs.iterator(); it.hasNext(); ) {
+                    Run run = it.next();
+                    if (advance(run, csv)) {
+                        finish(run);
+                        it.remove();
+                    }
+                    csv.flushIfFull();
+                }
+            }
+        }
+    }
+
+    private Run load() throws IOException {
+        int realisation = next.getAndIncrement();
+        if (realisation >= end) return null;
+        Path input = Simulator.inputPath(inputDir, N, realisation);
+        ArrayList<Particle> particles;
+        if (Files.exists(input)) {
+            particles = new InputParser(input.toString(), N).parseInputs();
+        } else {
+            // Mismos ids por corrida que con InputParser
+            List<Particle> generated = generator.generate(realisation);
+            particles = new ArrayList<>(generated.size());
+            for (int i = 0; i < generated.size(); i++) {
+                Particle p = generated.get(i);
+                particles.add(new Particle(i, p.getX(), p.getY(), p.getVx(), p.getVy(), p.getRadius(), p.getMass(), p.getSpecies()));
+            }
+        }
+        return new Run(realisation, new CollisionSystemPriorityQueue(particles, L, options));
+    }
+
+    /**
+     * Processes up to {@code slice} events and returns true once the realisation is over. Writes the same
+     * collisions as {@link Simulator}: those of every event that happens before the duration.
+     */
+    private boolean advance(Run run, CsvFormatter csv) {
+        CollisionSystemPriorityQueue engine = run.engine();
+        int k = 0;
+        boolean over = false;
+        while (k < slice && !over) {
+            Double t = engine.nextStep();
+            over = t == null || engine.getCurrentTime() >= duration;
+            if (over) break;
+            k++;
+            WallCollisionDTO c = engine.getWallCollision();
+            if (c != null && c.wall() != Wall.CORNER) {
+                csv.integer(run.realisation()).comma().fixed(c.time(), 4).comma().integer(c.wall().ordinal()).comma()
+                        .general17(c.normalSpeedAbs()).newLine();
+            }
+        }
+        events.addAndGet(k);
+        return over;
+    }
+
+    private void finish(Run run) {
+        EventStatistics runStatistics = run.engine().getStatistics();
+        if (runStatistics == null) return;
+        runStatistics.finish(run.engine().getCurrentTime());
+        synchronized (statistics) {
+            statistics.merge(runStatistics);
+        }
+    }
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        if (args.length < 6) {
+            System.out.println("Error: Parameters should be: N, L, realisations, simulationDuration, inputDir, outputDir [--first=0] [--workers=cores] [--active=4] [--slice=256] [--option=value ...]");
+            return;
+        }
+        int N = Integer.parseInt(args[0]);
+        double L = Double.parseDouble(args[1]);
+        int realisations = Integer.parseInt(args[2]);
+        int duration = Integer.parseInt(args[3]);
+        String inputDir = args[4];
+        String outputDir = args[5];
+        SimulationOptions options = SimulationOptions.parse(args, 6);
+        if (N <= 0 || L <= 0 || realisations <= 0 || duration <= 0) {
+            System.out.println("Error: N, L, realisations and simulationDuration should be positive");
+            return;
+        }
+        int workers = options.getInt("workers", Runtime.getRuntime().availableProcessors());
+        int first = options.getInt("first", 0);
+        Path collisions = collisionsPath(outputDir, N, L, duration);
+        long start = System.nanoTime();
+        long events = new BatchSimulator(N, L, first, realisations, duration, inputDir, options).run(collisions, workers);
+        double seconds = (System.nanoTime() - start) / 1e9;
+        System.out.printf(Locale.US, "%d realisations, %d events in %.1f s (%.0f realisations/s, %.3g events/s) -> %s%n",
+                realisations, events, seconds, realisations / seconds, events / seconds, collisions);
+    }
+}
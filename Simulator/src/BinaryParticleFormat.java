@@ -0,0 +1,174 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+
+/**
+ * Binary initial-condition format written by {@link Generator} and read by {@link InputParser}.
+ * <p>
+ * Layout (little endian, so numpy can read it with a plain dtype):
+ * <pre>
+ *   version 1: int magic ("EDMD"), int version, int particle count, int fields per particle
+ *              count * fields doubles: x, y, vx, vy, radius
+ *   version 2: int magic, int version, int particle count, int fields, int species count, int 0
+ *              species count * 2 doubles: radius, mass
+ *              count * fields doubles: x, y, vx, vy, species id
+ * </pre>
+ * Version 2 is only written for mixtures, single-species files stay in version 1.
+ * <p>
+ * Trajectories written by {@link OutputWriter} with --binary-output use version 3: the version 2 header
+ * (with a species count of 0 for single-species runs, and then the radius as last field) followed by
+ * one frame per step of: double time, count * fields doubles.
+ */
+public final class BinaryParticleFormat {
+
+    public static final String EXTENSION = ".bin";
+
+    static final int MAGIC = 0x444D4445; // "EDMD" leído en little endian
+    static final int VERSION = 1;
+    static final int SPECIES_VERSION = 2;
+    static final int TRAJECTORY_VERSION = 3;
+    static final int FIELDS = 5;
+    static final int HEADER_BYTES = 4 * Integer.BYTES;
+    static final int SPECIES_HEADER_BYTES = 6 * Integer.BYTES;
+
+    private BinaryParticleFormat() {
+    }
+
+    public static boolean isBinary(Path path) {
+        return path.getFileName().toString().endsWith(EXTENSION);
+    }
+
+    public static void write(Path path, List<Particle> particles) throws IOException {
+        write(path, particles, List.of());
+    }
+
+    /** Writes version 2 with the species table when {@code species} is not empty. */
+    public static void write(Path path, List<Particle> particles, List<Species> species) throws IOException {
+        boolean mixture = !species.isEmpty();
+        int header = mixture ? SPECIES_HEADER_BYTES + species.size() * 2 * Double.BYTES : HEADER_BYTES;
+        ByteBuffer buffer = ByteBuffer.allocate(header + particles.size() * FIELDS * Double.BYTES)
+                .order(ByteOrder.LITTLE_ENDIAN);
+        buffer.putInt(MAGIC).putInt(mixture ? SPECIES_VERSION : VERSION).putInt(particles.size()).putInt(FIELDS);
+        if (mixture) {
+            buffer.putInt(species.size()).putInt(0);
+            for (Species s : species) {
+                buffer.putDouble(s.radius()).putDouble(s.mass());
+            }
+        }
+        for (Particle p : particles) {
+            buffer.putDouble(p.getX()).putDouble(p.getY())
+                    .putDouble(p.getVx()).putDouble(p.getVy())
+                    .putDouble(mixture ? p.getSpecies() : p.getRadius());
+        }
+        buffer.flip();
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+        }
+    }
+
+    /** Header of a version 3 trajectory, ready to be written. */
+    public static ByteBuffer trajectoryHeader(int count, List<Species> species) {
+        ByteBuffer buffer = ByteBuffer.allocate(SPECIES_HEADER_BYTES + species.size() * 2 * Double.BYTES)
+                .order(ByteOrder.LITTLE_ENDIAN);
+        buffer.putInt(MAGIC).putInt(TRAJECTORY_VERSION).putInt(count).putInt(FIELDS).putInt(species.size()).putInt(0);
+        for (Species s : species) {
+            buffer.putDouble(s.radius()).putDouble(s.mass());
+        }
+        return buffer.flip();
+    }
+
+    public static int frameBytes(int count) {
+        return Double.BYTES * (1 + count * FIELDS);
+    }
+
+    /**
+     * Reads a version 3 header from {@code channel}, adding its species to {@code species}.
+     * Returns the particle count; the channel is left at the first frame.
+     */
+    public static int readTrajectoryHeader(FileChannel channel, List<Species> species) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(SPECIES_HEADER_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+        readFully(channel, header);
+        int magic = header.getInt();
+        int version = header.getInt();
+        int count = header.getInt();
+        int fields = header.getInt();
+        int speciesCount = header.getInt();
+        if (magic != MAGIC || version != TRAJECTORY_VERSION || fields != FIELDS || count < 0 || speciesCount < 0) {
+            throw new IllegalArgumentException("Not a binary trajectory (magic " + magic + ", version " + version + ")");
+        }
+        ByteBuffer table = ByteBuffer.allocate(speciesCount * 2 * Double.BYTES).order(ByteOrder.LITTLE_ENDIAN);
+        readFully(channel, table);
+        for (int s = 0; s < speciesCount; s++) {
+            species.add(new Species(s, table.getDouble(), table.getDouble()));
+        }
+        return count;
+    }
+
+    /** Fills {@code buffer} from the channel and flips it; false if the channel ended before the first byte. */
+    static boolean readFully(FileChannel channel, ByteBuffer buffer) throws IOException {
+        buffer.clear();
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer) < 0) {
+                if (buffer.position() == 0) return false;
+                throw new IllegalArgumentException("Truncated binary file: " + buffer.remaining() + " bytes missing");
+            }
+        }
+        buffer.flip();
+        return true;
+    }
+
+    /**
+     * Maps the file and returns its values as one flat array of {@link #FIELDS} doubles per particle.
+     * For version 2 files the species table is added to {@code species} and the last field is the species id.
+     */
+    public static double[] read(Path path, List<Species> species) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size < HEADER_BYTES) {
+                throw new IllegalArgumentException(path + ": truncated header (" + size + " bytes)");
+            }
+            MappedByteBuffer map = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            map.order(ByteOrder.LITTLE_ENDIAN);
+            int magic = map.getInt();
+            int version = map.getInt();
+            int count = map.getInt();
+            int fields = map.getInt();
+            if (magic != MAGIC) {
+                throw new IllegalArgumentException(path + ": not a binary particle file");
+            }
+            if ((version != VERSION && version != SPECIES_VERSION) || fields != FIELDS) {
+                throw new IllegalArgumentException(path + ": unsupported version " + version + " with " + fields + " fields");
+            }
+            long header = HEADER_BYTES;
+            if (version == SPECIES_VERSION) {
+                if (size < SPECIES_HEADER_BYTES) {
+                    throw new IllegalArgumentException(path + ": truncated species header");
+                }
+                int speciesCount = map.getInt();
+                map.getInt();
+                header = SPECIES_HEADER_BYTES + (long) speciesCount * 2 * Double.BYTES;
+                if (speciesCount <= 0 || size < header) {
+                    throw new IllegalArgumentException(path + ": invalid species table of " + speciesCount + " entries");
+                }
+                for (int s = 0; s < speciesCount; s++) {
+                    species.add(new Species(s, map.getDouble(), map.getDouble()));
+                }
+            }
+            long expectedSize = header + (long) count * FIELDS * Double.BYTES;
+            if (count < 0 || size != expectedSize) {
+                throw new IllegalArgumentException(path + ": expected " + expectedSize + " bytes for " + count + " particles, found " + size);
+            }
+            double[] values = new double[count * FIELDS];
+            map.asDoubleBuffer().get(values);
+            return values;
+        }
+    }
+}
@@ -0,0 +1,83 @@
+import java.util.Arrays;
+import java.util.function.IntConsumer;
+
+/**
+ * Uniform grid of square cells over a rectangle, holding particle indexes in intrusive linked lists
+ * (head per cell, next/prev per particle) so inserting, moving and removing are O(1) and allocation free.
+ * Points outside the rectangle are clamped to the border cells.
+ */
+public class CellGrid {
+
+    private final double x0, y0, cellSize;
+    private final int columns, rows;
+    private final int[] head;
+    private final int[] next, prev, cellOf;
+
+    public CellGrid(double x0, double y0, double width, double height, double cellSize, int capacity) {
+        this.x0 = x0;
+        this.y0 = y0;
+        this.cellSize = cellSize;
+        this.columns = Math.max(1, (int) Math.ceil(width / cellSize));
+        this.rows = Math.max(1, (int) Math.ceil(height / cellSize));
+        this.head = new int[columns * rows];
+        this.next = new int[capacity];
+        this.prev = new int[capacity];
+        this.cellOf = new int[capacity];
+        Arrays.fill(head, -1);
+        Arrays.fill(cellOf, -1);
+    }
+
+    public double getCellSize() {
+        return cellSize;
+    }
+
+    public void insert(int i, double x, double y) {
+        int cell = cell(column(x), row(y));
+        cellOf[i] = cell;
+        prev[i] = -1;
+        next[i] = head[cell];
+        if (head[cell] >= 0) prev[head[cell]] = i;
+        head[cell] = i;
+    }
+
+    public void remove(int i) {
+        int cell = cellOf[i];
+        if (cell < 0) return;
+        if (prev[i] >= 0) next[prev[i]] = next[i];
+        else head[cell] = next[i];
+        if (next[i] >= 0) prev[next[i]] = prev[i];
+        cellOf[i] = -1;
+    }
+
+    public void move(int i, double x, double y) {
+        int cell = cell(column(x), row(y));
+        if (cell == cellOf[i]) return;
+        remove(i);
+        insert(i, x, y);
+    }
+
+    /** Visits every index stored in the cells that intersect the square of half side {@code reach} around (x, y). */
+    public void forEachNear(double x, double y, double reach, IntConsumer action) {
+        int c0 = column(x - reach), c1 = column(x + reach);
+        int r0 = row(y - reach), r1 = row(y + reach);
+        for (int r = r0; r <= r1; r++) {
+            for (int c = c0; c <= c1; c++) {
+                for (int i = head[cell(c, r)]; i >= 0; i = next[i]) {
+                    action.accept(i);
+                }
+            }
+        }
+    }
+
+    private int column(double x) {
+        return Math.min(columns - 1, Math.max(0, (int) Math.floor((x - x0) / cellSize)));
+    }
+
+    private int row(double y) {
+        return Math.min(rows - 1, Math.max(0, (int) Math.floor((y - y0) / cellSize)));
+    }
+
+    private int cell(int column, int row) {
+        return row * columns + column;
+    }
+}
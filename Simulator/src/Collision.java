@@ -1,12 +1,13 @@
 public abstract class Collision implements Comparable<Collision> {
 
-    private Double time;
+    // Primitivo: se compara en cada operación de la cola
+    private double time;
     private final Particle p1;
     private final int count1;
 
 
-    protected Collision(Particle p1, Double time) {
-        if (p1 == null || time == null) {
+    protected Collision(Particle p1, double time) {
+        if (p1 == null) {
             throw new IllegalArgumentException();
         }
         this.p1 = p1;
@@ -22,11 +23,11 @@ public abstract class Collision implements Comparable<Collision> {
         return null;
     }
 
-    public Double getTime() {
+    public double getTime() {
         return time;
     }
 
-    protected void setTime(Double time) {
+    protected void setTime(double time) {
         this.time = time;
     }
 
@@ -34,13 +35,44 @@ public abstract class Collision implements Comparable<Collision> {
         return p1.getCollisionCount() == count1;
     }
 
+    /** Moves the event {@code dt} earlier, when the engine rebases its clock. */
     public void advanceTime(double dt) {
         this.time -= dt;
     }
 
     @Override
     public int compareTo(Collision o) {
-        return this.time.compareTo(o.time);
+        return Double.compare(this.time, o.time);
+    }
+
+    /**
+     * Orden total del modo determinista: tiempo, tipo de evento, ids y contadores de colisión.
+     * Los empates no dependen del orden en que se encolaron los eventos, que cambia entre motores.
+     */
+    public static int compareTotal(Collision a, Collision b) {
+        int c = Double.compare(a.time, b.time);
+        if (c != 0) return c;
+        c = Integer.compare(a.typeOrder(), b.typeOrder());
+        if (c != 0) return c;
+        c = Long.compare(a.p1.getId(), b.p1.getId());
+        if (c != 0) return c;
+        c = Long.compare(a.secondKey(), b.secondKey());
+        if (c != 0) return c;
+        c = Integer.compare(a.count1, b.count1);
+        if (c != 0) return c;
+        return Integer.compare(a.secondCount(), b.secondCount());
+    }
+
+    /** Posición del tipo de evento en {@link #compareTotal}. */
+    protected abstract int typeOrder();
+
+    /** Id de la segunda partícula o de la pared, para desempatar. */
+    protected long secondKey() {
+        return 0;
+    }
+
+    protected int secondCount() {
+        return 0;
     }
 
     /** Cada subclase define cómo resolver la colisión */
@@ -1,17 +1,45 @@
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashSet;
 import java.util.List;
 import java.util.PriorityQueue;
+import java.util.Set;
 import java.util.function.Predicate;
 
 public class CollisionSystemPriorityQueue {
 
     private final List<Particle> particles;
-    private final PriorityQueue<Collision> pq = new PriorityQueue<>();
+    private final PriorityQueue<Collision> pq;
     private final Enclosure mainEnclosure;
 //    private final Enclosure secondEnclosure;
+    // Con --epoch, relativo al comienzo de la época: el tiempo absoluto es epochs * epochLength + currentTime
     private double currentTime = 0.0;
+    private final double epochLength;
+    private long epochs;
     private WallCollisionDTO collision = null;
+    private Collision lastEvent;
     private int collisionCount = 0;
 
+    // Copia en arrays primitivos del estado de las partículas, para el kernel de predicción
+    private final double[] xs, ys, vxs, vys, radii, hitTimes;
+    // Con --reorder las partículas se guardan en orden de Morton; original[i] es su posición en la lista recibida
+    private final List<Particle> received;
+    private final int[] original;
+    private final int reorderInterval;
+    // null si se predice contra todas las partículas
+    private final NeighbourLists neighbours;
+    // null salvo con --stats
+    private final EventStatistics statistics;
+    // null salvo con --flux
+    private final DoorFlux flux;
+    // null salvo con --velocities
+    private final VelocityTracker velocities;
+    // null salvo con --fields, lo agrega el Simulator que tiene la ruta de salida
+    private FieldAccumulator fields;
+    // null salvo con --window; ready tiene los eventos ya predichos que faltan aplicar
+    private final EventWindow window;
+    private final ArrayDeque<EventWindow.Slot> ready = new ArrayDeque<>();
+
     public WallCollisionDTO getWallCollision(){
         WallCollisionDTO retCollision = collision;
         collision = null;
@@ -19,8 +47,46 @@ public class CollisionSystemPriorityQueue {
     }
 
     public CollisionSystemPriorityQueue(List<Particle> particles, double L) {
-        this.particles = particles;
+        this(particles, L, new SimulationOptions());
+    }
+
+    public CollisionSystemPriorityQueue(List<Particle> particles, double L, SimulationOptions options) {
+        this.particles = new ArrayList<>(particles);
+        this.received = particles;
+        // La ventana solo coincide con el motor secuencial si los empates no dependen del orden de la cola
+        boolean totalOrder = options.deterministic() || options.has(SimulationOptions.WINDOW);
+        pq = totalOrder ? new PriorityQueue<>(Collision::compareTotal) : new PriorityQueue<>();
         mainEnclosure = new Enclosure(0.0, 0.0, L);
+        int n = particles.size();
+        xs = new double[n];
+        ys = new double[n];
+        vxs = new double[n];
+        vys = new double[n];
+        radii = new double[n];
+        hitTimes = new double[n];
+        original = new int[n];
+        for (int i = 0; i < n; i++) {
+            particles.get(i).setSlot(i);
+            store(i, particles.get(i));
+            original[i] = i;
+        }
+        epochLength = options.epochLength();
+        if (epochLength < 0) throw new IllegalArgumentException("Epoch length should be positive: " + epochLength);
+        reorderInterval = options.reorderInterval();
+        if (reorderInterval > 0) sortStorage(null);
+        double skin = options.neighbourSkin();
+        neighbours = skin > 0 ? new NeighbourLists(skin, xs, ys, radii, mainEnclosure) : null;
+        statistics = options.statistics() ? new EventStatistics(n) : null;
+        flux = options.has(SimulationOptions.FLUX) ? new DoorFlux(xs, mainEnclosure, options.fluxInterval()) : null;
+        velocities = options.has(SimulationOptions.VELOCITIES)
+                ? new VelocityTracker(received, mainEnclosure, options.velocityBins(), getCurrentTime()) : null;
+        if (options.has(SimulationOptions.WINDOW)) {
+            if (neighbours != null) throw new IllegalArgumentException("--window cannot be combined with --skin");
+            window = new EventWindow(options.getInt(SimulationOptions.WINDOW, 16),
+                    options.getInt("window-workers", Runtime.getRuntime().availableProcessors()), n, L);
+        } else {
+            window = null;
+        }
         // cargar colisiones iniciales
         for (Particle p : particles) {
             predictExclusiveStrong(p);
@@ -28,10 +94,15 @@ public class CollisionSystemPriorityQueue {
     }
 
     public Double nextStep() {
+        lastEvent = null;
+        if (window != null) return nextWindowStep();
         if(pq.isEmpty()) return null;
         Collision c = pq.poll();
 
-        while(!c.isValid())    {   // Busco la proxima colisión válida
+        while(!c.isValid() || c instanceof NeighbourRebuild)    {   // Busco la proxima colisión válida
+            if (c.isValid()) {
+                rebuildNeighbours(c);
+            }
             if(pq.isEmpty()) {
                 return null;
             }
@@ -44,66 +115,246 @@ public class CollisionSystemPriorityQueue {
             }
         }
 
-        double dt = c.getTime() - currentTime;
-        moveParticles(dt);
-        currentTime = c.getTime();
+        return process(c, null);
+    }
+
+    /**
+     * Processes the valid event {@code c}. With a {@code slot} of the event window the pair scans come from
+     * it, as long as the particles are in the state they were speculated with.
+     */
+    private Double process(Collision c, EventWindow.Slot slot) {
+        advanceTo(c.getTime());
+        lastEvent = c;
 
         Particle a = c.getP1();
         Particle b = c.getP2();
 
+        if (statistics != null) {
+            statistics.record(c, original[a.getSlot()], b == null ? -1 : original[b.getSlot()], getCurrentTime());
+        }
         collision = c.resolve();
+        if (collision != null && epochLength > 0) {
+            collision = new WallCollisionDTO(collision.vx(), collision.vy(), collision.wall(), getCurrentTime());
+        }
+        store(a);
+        if (b != null) store(b);
 
         a.incrementCollisionCount();
         if (b != null) b.incrementCollisionCount();
 
-        predict(a);
-        if (b != null) predictExclusive(b, a);
+        boolean speculated = predictGeneral(a, p2 -> true, slot);
+        if (b != null) speculated &= predictGeneral(b, p2 -> !p2.equals(a), slot);
+        if (!speculated) dropWindow();
 
         ++collisionCount;
-        return currentTime;
+        boolean reorder = reorderInterval > 0 && collisionCount % reorderInterval == 0;
+        boolean newEpoch = epochLength > 0 && currentTime >= epochLength;
+        // Los índices y los tiempos de la ventana dejan de valer
+        if (reorder || newEpoch) dropWindow();
+        if (reorder) sortStorage(neighbours);
+        if (newEpoch) rebase();
+        return getCurrentTime();
+    }
+
+    /**
+     * Window mode: commits the next speculated event, speculating a new window when there are none left.
+     * Each event still goes through {@link #process}, so the trajectory is the sequential one.
+     */
+    private Double nextWindowStep() {
+        while (ready.isEmpty()) {
+            List<Collision> events = new ArrayList<>(window.getCapacity());
+            Set<Particle> busy = new HashSet<>();
+            while (events.size() < window.getCapacity() && !pq.isEmpty()) {
+                Collision c = pq.peek();
+                if (!c.isValid()) {
+                    pq.poll();
+                    continue;
+                }
+                // Cada partícula una sola vez: el resto de la ventana no cambia su versión (collisionCount)
+                if (busy.contains(c.getP1()) || (c.getP2() != null && busy.contains(c.getP2()))) break;
+                events.add(pq.poll());
+                busy.add(c.getP1());
+                if (c.getP2() != null) busy.add(c.getP2());
+            }
+            if (events.isEmpty()) return null;
+            List<EventWindow.Slot> slots = window.speculate(events, currentTime, Particle::getSlot, xs, ys, vxs, vys, radii);
+            ready.addAll(slots);
+            for (int k = slots.size() + (slots.isEmpty() ? 1 : 0); k < events.size(); k++) pq.add(events.get(k));
+            // Sin prefijo válido el primero va por el camino secuencial
+            if (slots.isEmpty()) return process(events.get(0), null);
+        }
+        EventWindow.Slot slot = ready.poll();
+        if (!slot.event.isValid()) {
+            throw new IllegalStateException("Event window conflict on " + slot.event);
+        }
+        return process(slot.event, slot);
+    }
+
+    /** Puts the speculated events that were not committed back in the queue. */
+    private void dropWindow() {
+        while (!ready.isEmpty()) pq.add(ready.poll().event);
+    }
+
+    /**
+     * Starts a new epoch: the clock and every queued event move back a whole number of epochs, so times stay
+     * small and keep the same absolute precision however long the run. The shift is the same for every event,
+     * so the heap order does not change. Particles carry no timestamps (they are all moved on every event).
+     */
+    private void rebase() {
+        long k = (long) (currentTime / epochLength);
+        double shift = k * epochLength;
+        currentTime -= shift;
+        for (Collision c : pq) {
+            c.advanceTime(shift);
+        }
+        epochs += k;
+    }
+
+    private void advanceTo(double time) {
+        if (fields != null) fields.advance(getCurrentTime() + (time - currentTime));
+        moveParticles(time - currentTime);
+        currentTime = time;
+    }
+
+    /** La partícula salió de su vecindario: se recalcula su lista y todas sus colisiones. */
+    private void rebuildNeighbours(Collision c) {
+        advanceTo(c.getTime());
+        Particle p = c.getP1();
+        neighbours.rebuild(p.getSlot());
+        p.incrementCollisionCount();
+        predict(p);
     }
 
     private void moveParticles(double dt) {
-        for (Particle p : particles) {
+        // Objetos en el orden recibido, que suele ser el de creación, y arrays en el suyo: los dos se recorren
+        // en secuencia. x + vx * dt da el mismo resultado en los dos porque están sincronizados (store)
+        for (Particle p : received) {
             p.move(dt);
         }
+        if (flux == null && velocities == null) {
+            for (int i = 0; i < xs.length; i++) {
+                xs[i] += vxs[i] * dt;
+                ys[i] += vys[i] * dt;
+            }
+            return;
+        }
+        double start = getCurrentTime();
+        for (int i = 0; i < xs.length; i++) {
+            double x = xs[i];
+            xs[i] += vxs[i] * dt;
+            ys[i] += vys[i] * dt;
+            if (flux != null) flux.flight(x, xs[i], vxs[i], start);
+            if (velocities != null) velocities.flight(original[i], x, xs[i], vxs[i], start);
+        }
     }
 
-    private void predict(Particle p) {
-        predictGeneral(p, p2 -> true);
+    /**
+     * Sorts the particle arrays along a Morton curve of the enclosure, so the neighbours of a particle are
+     * close in memory. Events hold the particles and not their indexes, so they stay valid.
+     */
+    private void sortStorage(NeighbourLists lists) {
+        int n = particles.size();
+        int[] order = MortonOrder.order(xs, ys, n, mainEnclosure.getMinX(), mainEnclosure.getMinY(),
+                mainEnclosure.getMaxX() - mainEnclosure.getMinX(), mainEnclosure.getMaxY() - mainEnclosure.getMinY());
+        permute(xs, order);
+        permute(ys, order);
+        permute(vxs, order);
+        permute(vys, order);
+        permute(radii, order);
+        int[] oldOriginal = original.clone();
+        List<Particle> oldParticles = new ArrayList<>(particles);
+        for (int k = 0; k < n; k++) {
+            original[k] = oldOriginal[order[k]];
+            particles.set(k, oldParticles.get(order[k]));
+            particles.get(k).setSlot(k);
+        }
+        if (lists != null) lists.permute(order);
+    }
+
+    private static void permute(double[] values, int[] order) {
+        double[] old = values.clone();
+        for (int k = 0; k < order.length; k++) values[k] = old[order[k]];
     }
 
-    private void predictExclusive(Particle p, Particle toExclude) {
-        predictGeneral(p, p2 -> !p2.equals(toExclude));
+    private void store(Particle p) {
+        store(p.getSlot(), p);
+    }
+
+    private void store(int i, Particle p) {
+        if (flux != null) flux.moved(xs[i], p.getX(), getCurrentTime());
+        xs[i] = p.getX();
+        ys[i] = p.getY();
+        vxs[i] = p.getVx();
+        vys[i] = p.getVy();
+        radii[i] = p.getRadius();
+        if (fields != null) fields.restart(original[i], p, getCurrentTime());
+        if (velocities != null) velocities.update(original[i], p, getCurrentTime());
+    }
+
+    private void predict(Particle p) {
+        predictGeneral(p, p2 -> true, null);
     }
 
     private void predictExclusiveStrong(Particle p) {
-        predictGeneral(p, p2 -> p.getId() < p2.getId());
+        predictGeneral(p, p2 -> p.getId() < p2.getId(), null);
     }
 
-    private void predictGeneral(Particle p, Predicate<Particle> condition) {
-        if (p == null) return;
+    /** Returns false if {@code slot} was given but its scans did not match the particle, which was then scanned here. */
+    private boolean predictGeneral(Particle p, Predicate<Particle> condition, EventWindow.Slot slot) {
+        if (p == null) return true;
+
+        int self = p.getSlot();
 
         // Enqueue next wall collision (minimum among four walls)
-        WallCollision wc = mainEnclosure.timeToHitBoundary(p);
-        if (wc != null && wc.getTime() < Particle.NO_HIT_TIME) {
-            wc.setTime(wc.getTime() + currentTime);
-            pq.add(wc);
-        }
-
-        for (Particle p2 : particles) {
-            if (p2.equals(p)) continue;
-            if (!condition.test(p2)) continue;
-            double t = p.timeToHit(p2);
-            if (t < Particle.NO_HIT_TIME) {
-                pq.add(new ParticleCollision(p, p2, t + currentTime));
+        // Con listas de vecinos solo si el vecindario toca alguna pared, si no la reconstrucción llega antes
+        if (neighbours == null || mainEnclosure.isNearBoundary(neighbours.centreX(self), neighbours.centreY(self),
+                p.getRadius() + neighbours.getSkin() / 2)) {
+            WallCollision wc = mainEnclosure.timeToHitBoundary(p);
+            if (wc != null && wc.getTime() < Particle.NO_HIT_TIME) {
+                wc.setTime(wc.getTime() + currentTime);
+                pq.add(wc);
+            }
+            // timeToHitBoundary puede haber corrido la partícula (moveBackwards)
+            store(self, p);
+        }
+
+        if (neighbours == null) {
+            double[] times = slot == null ? null : slot.hitsFor(p);
+            if (times == null) {
+                times = hitTimes;
+                PairTimeKernel.timesToHit(p.getX(), p.getY(), p.getVx(), p.getVy(), p.getRadius(),
+                        xs, ys, vxs, vys, radii, 0, particles.size(), times);
+            }
+            for (int j = 0; j < particles.size(); j++) {
+                enqueuePair(p, self, j, times[j], condition);
             }
+            return slot == null || times != hitTimes;
+        }
+
+        int[] list = neighbours.neighbours(self);
+        for (int k = 0; k < neighbours.size(self); k++) {
+            int j = list[k];
+            double t = PairTimeKernel.timeToHit(xs[self], ys[self], vxs[self], vys[self], radii[self],
+                    xs[j], ys[j], vxs[j], vys[j], radii[j]);
+            enqueuePair(p, self, j, t, condition);
         }
+        double leave = neighbours.timeToLeave(self, p.getX(), p.getY(), p.getVx(), p.getVy());
+        if (leave < Particle.NO_HIT_TIME) {
+            pq.add(new NeighbourRebuild(p, leave + currentTime));
+        }
+        return true;
+    }
+
+    private void enqueuePair(Particle p, int self, int j, double t, Predicate<Particle> condition) {
+        if (j == self || !(t < Particle.NO_HIT_TIME)) return;
+        Particle p2 = particles.get(j);
+        if (!condition.test(p2)) return;
+        pq.add(new ParticleCollision(p, p2, t + currentTime));
     }
 
     public void printState() {
         System.out.println("=== Collision System State ===");
-        System.out.println("Current Time: " + currentTime);
+        System.out.println("Current Time: " + getCurrentTime());
         System.out.println("Pending Collisions (in time order):");
 
         PriorityQueue<Collision> copy = new PriorityQueue<>(pq);
@@ -116,12 +367,56 @@ public class CollisionSystemPriorityQueue {
 
     public void printNextCollision()    {
         System.out.println("=== Next Collision ===");
-        System.out.println("Current Time: " + currentTime);
+        System.out.println("Current Time: " + getCurrentTime());
         System.out.println(pq.peek());
     }
 
+    /** Neighbour lists of the engine, indexed like {@link #getParticle}; null without --skin. */
+    public NeighbourLists getNeighbourLists() {
+        return neighbours;
+    }
+
+    /** Particle stored at index {@code i}, which is its index in the received list unless --reorder sorts them. */
+    public Particle getParticle(int i) {
+        return particles.get(i);
+    }
+
+    /** Times the enclosure had to move a particle backwards to find its next wall collision. */
+    public long getFallbackCorrections() {
+        return mainEnclosure.getFallbackCorrections();
+    }
+
+    /** Statistics of the processed events, null unless enabled with --stats. */
+    public EventStatistics getStatistics() {
+        return statistics;
+    }
+
+    /** Chamber occupancy and door crossings, null unless enabled with --flux. */
+    public DoorFlux getFlux() {
+        return flux;
+    }
+
+    /** Velocity histograms and chamber temperatures, null unless enabled with --velocities. */
+    public VelocityTracker getVelocities() {
+        return velocities;
+    }
+
+    /** Starts integrating {@code fields} from the current state; every later change of a particle is reported to it. */
+    public void attachFields(FieldAccumulator fields) {
+        for (int i = 0; i < particles.size(); i++) {
+            fields.start(original[i], particles.get(i), getCurrentTime());
+        }
+        this.fields = fields;
+    }
+
+    /** Event processed by the last {@link #nextStep}, null if there was none. */
+    public Collision getLastEvent() {
+        return lastEvent;
+    }
+
+    /** Absolute simulated time. */
     public double getCurrentTime() {
-        return currentTime;
+        return epochLength > 0 ? epochs * epochLength + currentTime : currentTime;
     }
 }
 
@@ -0,0 +1,426 @@
+import java.io.IOException;
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * Appends CSV values to a reusable byte buffer that is written to a {@link FileChannel}, without allocating per value.
+ * <p>
+ * The text is the one {@link java.util.Formatter} writes for the patterns of {@link OutputWriter}:
+ * {@link #general17} is "%.17g" (the shortest digits that round-trip, padded with zeros to 17 significant digits)
+ * and {@link #fixed} is "%.nf" (those digits rounded half up). The shortest digits come from Ryu
+ * (Adams, PLDI 2018), whose tables are built once when the class is loaded.
+ */
+public final class CsvFormatter implements AutoCloseable {
+
+    private static final int FLUSH_BYTES = 1 << 18;
+    private static final byte[] LINE_SEPARATOR = System.lineSeparator().getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] NAN = "NaN".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] INFINITY = "Infinity".getBytes(StandardCharsets.US_ASCII);
+
+    private static final int MANTISSA_BITS = 52;
+    private static final int EXPONENT_BITS = 11;
+    private static final int BIAS = 1023;
+    private static final int POW5_BITCOUNT = 125;
+    private static final int POW5_INV_BITCOUNT = 125;
+    private static final int POW5_TABLE_SIZE = 326;
+    private static final int POW5_INV_TABLE_SIZE = 342;
+    // Pares (bits bajos, bits altos) de 5^i y 2^k / 5^q con 125 bits significativos
+    private static final long[] POW5_SPLIT = new long[2 * POW5_TABLE_SIZE];
+    private static final long[] POW5_INV_SPLIT = new long[2 * POW5_INV_TABLE_SIZE];
+
+    static {
+        BigInteger mask = BigInteger.ONE.shiftLeft(64).subtract(BigInteger.ONE);
+        for (int i = 0; i < POW5_INV_TABLE_SIZE; i++) {
+            BigInteger pow = BigInteger.valueOf(5).pow(i);
+            int length = pow.bitLength();
+            if (i < POW5_TABLE_SIZE) {
+                BigInteger split = length >= POW5_BITCOUNT ? pow.shiftRight(length - POW5_BITCOUNT) : pow.shiftLeft(POW5_BITCOUNT - length);
+                POW5_SPLIT[2 * i] = split.and(mask).longValue();
+                POW5_SPLIT[2 * i + 1] = split.shiftRight(64).longValue();
+            }
+            BigInteger inverse = BigInteger.ONE.shiftLeft(length - 1 + POW5_INV_BITCOUNT).divide(pow).add(BigInteger.ONE);
+            POW5_INV_SPLIT[2 * i] = inverse.and(mask).longValue();
+            POW5_INV_SPLIT[2 * i + 1] = inverse.shiftRight(64).longValue();
+        }
+    }
+
+    private final FileChannel channel;
+    private final boolean ownsChannel;
+    private byte[] bytes = new byte[FLUSH_BYTES + 4096];
+    private ByteBuffer view = ByteBuffer.wrap(bytes);
+    private int size;
+    // Dígitos del último valor convertido: digits[0..digitCount) * 10^(exponent - digitCount + 1)
+    private final byte[] digits = new byte[20];
+    private int digitCount;
+    private int exponent;
+
+    public CsvFormatter(Path path) throws IOException {
+        this.channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+                StandardOpenOption.WRITE);
+        this.ownsChannel = true;
+    }
+
+    /**
+     * Formatter with its own buffer over a channel shared by several threads. Each flush writes the whole buffer
+     * while holding the channel's lock, so lines of different formatters never interleave. The channel stays open.
+     */
+    public CsvFormatter(FileChannel shared) {
+        this.channel = shared;
+        this.ownsChannel = false;
+    }
+
+    /** Same as "%.17g" of {@link java.util.Formatter} with {@link java.util.Locale#US}. */
+    public CsvFormatter general17(double value) {
+        if (special(value)) return this;
+        ensure(32);
+        if (sign(value)) value = -value;
+        if (value == 0.0) {
+            digits[0] = '0';
+            digitCount = 1;
+            exponent = 0;
+        } else {
+            shortest(value);
+        }
+        int e = exponent;
+        if (e >= -4 && e < 17) {
+            if (e >= 0) {
+                for (int k = 0; k <= e; k++) put(digit(k));
+                if (e < 16) {
+                    put('.');
+                    for (int k = e + 1; k < 17; k++) put(digit(k));
+                }
+            } else {
+                put('0');
+                put('.');
+                for (int k = e + 1; k < 0; k++) put('0');
+                for (int k = 0; k < 17; k++) put(digit(k));
+            }
+        } else {
+            put(digit(0));
+            put('.');
+            for (int k = 1; k < 17; k++) put(digit(k));
+            put('e');
+            put(e < 0 ? '-' : '+');
+            int abs = Math.abs(e);
+            if (abs >= 100) put('0' + abs / 100);
+            put('0' + abs / 10 % 10);
+            put('0' + abs % 10);
+        }
+        return this;
+    }
+
+    /** Same as "%.nf" of {@link java.util.Formatter} with {@link java.util.Locale#US}. */
+    public CsvFormatter fixed(double value, int decimals) {
+        if (special(value)) return this;
+        if (sign(value)) value = -value;
+        if (value == 0.0) {
+            digitCount = 0;
+            exponent = 0;
+        } else {
+            shortest(value);
+            roundHalfUp(exponent + 1 + decimals);
+        }
+        ensure(Math.max(exponent, 0) + decimals + 4);
+        int e = exponent;
+        if (e >= 0) {
+            for (int k = 0; k <= e; k++) put(digit(k));
+        } else {
+            put('0');
+        }
+        if (decimals > 0) {
+            put('.');
+            for (int k = e + 1; k <= e + decimals; k++) put(k < 0 ? '0' : digit(k));
+        }
+        return this;
+    }
+
+    public CsvFormatter integer(long value) {
+        ensure(21);
+        if (value < 0) {
+            put('-');
+        } else {
+            value = -value;
+        }
+        // En negativo para cubrir Long.MIN_VALUE
+        int start = size;
+        do {
+            put('0' - (int) (value % 10));
+            value /= 10;
+        } while (value != 0);
+        for (int i = start, j = size - 1; i < j; i++, j--) {
+            byte t = bytes[i];
+            bytes[i] = bytes[j];
+            bytes[j] = t;
+        }
+        return this;
+    }
+
+    /** ASCII text such as fixed headers; not meant for per-value use. */
+    public CsvFormatter text(String ascii) {
+        ensure(ascii.length());
+        for (int i = 0; i < ascii.length(); i++) put(ascii.charAt(i));
+        return this;
+    }
+
+    public CsvFormatter comma() {
+        ensure(1);
+        put(',');
+        return this;
+    }
+
+    public CsvFormatter newLine() {
+        ensure(LINE_SEPARATOR.length);
+        for (byte b : LINE_SEPARATOR) put(b);
+        return this;
+    }
+
+    /** Writes the buffer once it holds enough bytes to make the system call worth it. */
+    public void flushIfFull() throws IOException {
+        if (size >= FLUSH_BYTES) flush();
+    }
+
+    public void flush() throws IOException {
+        view.clear().limit(size);
+        synchronized (channel) {
+            while (view.hasRemaining()) channel.write(view);
+        }
+        size = 0;
+    }
+
+    @Override
+    public void close() throws IOException {
+        flush();
+        if (ownsChannel) channel.close();
+    }
+
+    private boolean special(double value) {
+        if (Double.isNaN(value)) {
+            append(NAN);
+            return true;
+        }
+        if (Double.isInfinite(value)) {
+            if (value < 0) {
+                ensure(1);
+                put('-');
+            }
+            append(INFINITY);
+            return true;
+        }
+        return false;
+    }
+
+    // Formatter escribe el signo también para -0.0
+    private boolean sign(double value) {
+        if (Double.doubleToRawLongBits(value) >= 0) return false;
+        ensure(1);
+        put('-');
+        return true;
+    }
+
+    private void append(byte[] text) {
+        ensure(text.length);
+        for (byte b : text) put(b);
+    }
+
+    private void put(int c) {
+        bytes[size++] = (byte) c;
+    }
+
+    private void ensure(int extra) {
+        if (size + extra > bytes.length) {
+            bytes = Arrays.copyOf(bytes, Math.max(bytes.length * 2, size + extra));
+            view = ByteBuffer.wrap(bytes);
+        }
+    }
+
+    private int digit(int k) {
+        return k < digitCount ? digits[k] : '0';
+    }
+
+    /** Keeps the first {@code keep} digits, rounding half up on the next one like Formatter does. */
+    private void roundHalfUp(int keep) {
+        if (keep >= digitCount) return;
+        if (keep < 0) {
+            digitCount = 0;
+            return;
+        }
+        boolean up = digits[keep] >= '5';
+        digitCount = keep;
+        if (!up) return;
+        int k = keep - 1;
+        while (k >= 0 && digits[k] == '9') k--;
+        if (k < 0) {
+            digits[0] = '1';
+            digitCount = 1;
+            exponent++;
+        } else {
+            digits[k]++;
+            digitCount = k + 1;
+        }
+    }
+
+    /** Shortest digits of a positive finite double into {@link #digits} and {@link #exponent}. */
+    private void shortest(double value) {
+        long bits = Double.doubleToRawLongBits(value);
+        long ieeeMantissa = bits & ((1L << MANTISSA_BITS) - 1);
+        int ieeeExponent = (int) (bits >>> MANTISSA_BITS) & ((1 << EXPONENT_BITS) - 1);
+
+        int e2;
+        long m2;
+        if (ieeeExponent == 0) {
+            e2 = 1 - BIAS - MANTISSA_BITS - 2;
+            m2 = ieeeMantissa;
+        } else {
+            e2 = ieeeExponent - BIAS - MANTISSA_BITS - 2;
+            m2 = (1L << MANTISSA_BITS) | ieeeMantissa;
+        }
+        boolean acceptBounds = (m2 & 1) == 0;
+
+        // Intervalo de redondeo [mm, mp] alrededor de mv, en unidades de 2^e2
+        long mv = 4 * m2;
+        int mmShift = ieeeMantissa != 0 || ieeeExponent <= 1 ? 1 : 0;
+        long mp = mv + 2;
+        long mm = mv - 1 - mmShift;
+
+        long vr, vp, vm;
+        int e10;
+        boolean vmIsTrailingZeros = false;
+        boolean vrIsTrailingZeros = false;
+        if (e2 >= 0) {
+            int q = log10Pow2(e2) - (e2 > 3 ? 1 : 0);
+            e10 = q;
+            int k = POW5_INV_BITCOUNT + pow5bits(q) - 1;
+            int i = -e2 + q + k;
+            vr = mulShift(mv, POW5_INV_SPLIT, q, i);
+            vp = mulShift(mp, POW5_INV_SPLIT, q, i);
+            vm = mulShift(mm, POW5_INV_SPLIT, q, i);
+            if (q <= 21) {
+                if (mv % 5 == 0) {
+                    vrIsTrailingZeros = pow5Factor(mv) >= q;
+                } else if (acceptBounds) {
+                    vmIsTrailingZeros = pow5Factor(mm) >= q;
+                } else {
+                    vp -= pow5Factor(mp) >= q ? 1 : 0;
+                }
+            }
+        } else {
+            int q = log10Pow5(-e2) - (-e2 > 1 ? 1 : 0);
+            e10 = q + e2;
+            int i = -e2 - q;
+            int k = pow5bits(i) - POW5_BITCOUNT;
+            int j = q - k;
+            vr = mulShift(mv, POW5_SPLIT, i, j);
+            vp = mulShift(mp, POW5_SPLIT, i, j);
+            vm = mulShift(mm, POW5_SPLIT, i, j);
+            if (q <= 1) {
+                vrIsTrailingZeros = true;
+                if (acceptBounds) {
+                    vmIsTrailingZeros = mmShift == 1;
+                } else {
+                    vp--;
+                }
+            } else if (q < 63) {
+                vrIsTrailingZeros = (mv & ((1L << q) - 1)) == 0;
+            }
+        }
+
+        int removed = 0;
+        int lastRemovedDigit = 0;
+        long output;
+        if (vmIsTrailingZeros || vrIsTrailingZeros) {
+            while (vp / 10 > vm / 10) {
+                vmIsTrailingZeros &= vm % 10 == 0;
+                vrIsTrailingZeros &= lastRemovedDigit == 0;
+                lastRemovedDigit = (int) (vr % 10);
+                vr /= 10;
+                vp /= 10;
+                vm /= 10;
+                removed++;
+            }
+            if (vmIsTrailingZeros) {
+                while (vm % 10 == 0) {
+                    vrIsTrailingZeros &= lastRemovedDigit == 0;
+                    lastRemovedDigit = (int) (vr % 10);
+                    vr /= 10;
+                    vp /= 10;
+                    vm /= 10;
+                    removed++;
+                }
+            }
+            if (vrIsTrailingZeros && lastRemovedDigit == 5 && vr % 2 == 0) {
+                // Empate exacto: redondea a par
+                lastRemovedDigit = 4;
+            }
+            output = vr + ((vr == vm && (!acceptBounds || !vmIsTrailingZeros)) || lastRemovedDigit >= 5 ? 1 : 0);
+        } else {
+            boolean roundUp = false;
+            if (vp / 100 > vm / 100) {
+                roundUp = vr % 100 >= 50;
+                vr /= 100;
+                vp /= 100;
+                vm /= 100;
+                removed += 2;
+            }
+            while (vp / 10 > vm / 10) {
+                roundUp = vr % 10 >= 5;
+                vr /= 10;
+                vp /= 10;
+                vm /= 10;
+                removed++;
+            }
+            output = vr + (vr == vm || roundUp ? 1 : 0);
+        }
+
+        int count = 0;
+        for (long o = output; o != 0; o /= 10) count++;
+        for (int k = count - 1; k >= 0; k--) {
+            digits[k] = (byte) ('0' + output % 10);
+            output /= 10;
+        }
+        // output * 10^(e10 + removed), pasado a d.ddd * 10^exponent
+        exponent = e10 + removed + count - 1;
+        while (count > 1 && digits[count - 1] == '0') count--;
+        digitCount = count;
+    }
+
+    private static int pow5bits(int e) {
+        return ((e * 1217359) >>> 19) + 1;
+    }
+
+    private static int log10Pow2(int e) {
+        return (e * 78913) >>> 18;
+    }
+
+    private static int log10Pow5(int e) {
+        return (e * 732923) >>> 20;
+    }
+
+    private static int pow5Factor(long value) {
+        int count = 0;
+        while (value % 5 == 0) {
+            value /= 5;
+            count++;
+        }
+        return count;
+    }
+
+    /** (m * table[index]) >> shift, with m below 2^58 and a 128-bit table entry. */
+    private static long mulShift(long m, long[] table, int index, int shift) {
+        long low = table[2 * index];
+        long high = table[2 * index + 1];
+        long b0High = Math.multiplyHigh(m, low) + (low < 0 ? m : 0);
+        long b2Low = m * high;
+        long b2High = Math.multiplyHigh(m, high);
+        long sumLow = b2Low + b0High;
+        long sumHigh = b2High + (Long.compareUnsigned(sumLow, b2Low) < 0 ? 1 : 0);
+        int dist = shift - 64;
+        if (dist == 0) return sumLow;
+        if (dist >= 64) return sumHigh >>> (dist - 64);
+        return (sumHigh << (64 - dist)) | (sumLow >>> dist);
+    }
+}
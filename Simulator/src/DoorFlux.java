@@ -0,0 +1,109 @@
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Locale;
+
+/**
+ * Occupancy of the two chambers and particle flux through the door (--flux=&lt;interval&gt;), kept while the
+ * engine moves the particles so relaxation can be studied without the frames.
+ * <p>
+ * A particle is in the right chamber when its centre is past the door plane x = {@code getMinX() + getWidth()}.
+ * Particles fly straight between events, so one that changes side while the engine advances crossed exactly
+ * once, at the time its x reached the plane; corrections made by the enclosure are counted at the current time.
+ * Crossings are binned by that time, and {@link #write} stores one row per bin in output_*_flux.csv:
+ * "time,left,right,left_to_right,right_to_left", with the occupancy at the end of the bin and the crossings in it.
+ */
+public class DoorFlux {
+
+    public static final String FILE_SUFFIX = "_flux.csv";
+
+    private final double door;
+    private final double interval;
+    private final int initialLeft, initialRight;
+    private int left, right;
+    private long[] leftToRight = new long[64], rightToLeft = new long[64];
+
+    public DoorFlux(double[] xs, Enclosure enclosure, double interval) {
+        if (!(interval > 0)) throw new IllegalArgumentException("Flux interval should be positive: " + interval);
+        this.door = enclosure.getMinX() + enclosure.getWidth();
+        this.interval = interval;
+        for (double x : xs) {
+            if (x < door) left++;
+            else right++;
+        }
+        initialLeft = left;
+        initialRight = right;
+    }
+
+    /** A particle moved from {@code from} to {@code to} with velocity {@code vx} during a flight that started at {@code start}. */
+    public void flight(double from, double to, double vx, double start) {
+        if ((from < door) == (to < door)) return;
+        crossed(from < door, start + (door - from) / vx);
+    }
+
+    /** A particle was put at {@code to} at {@code time} without flying there. */
+    public void moved(double from, double to, double time) {
+        if ((from < door) == (to < door)) return;
+        crossed(from < door, time);
+    }
+
+    private void crossed(boolean toRight, double time) {
+        int bin = Math.max(0, (int) (time / interval));
+        if (bin >= leftToRight.length) {
+            int size = Math.max(bin + 1, 2 * leftToRight.length);
+            leftToRight = Arrays.copyOf(leftToRight, size);
+            rightToLeft = Arrays.copyOf(rightToLeft, size);
+        }
+        if (toRight) {
+            leftToRight[bin]++;
+            left--;
+            right++;
+        } else {
+            rightToLeft[bin]++;
+            right--;
+            left++;
+        }
+    }
+
+    /** Particles in the left chamber now. */
+    public int getLeft() {
+        return left;
+    }
+
+    public int getRight() {
+        return right;
+    }
+
+    /** Writes the bins up to {@code endTime}, the last one cut at the end of the run. */
+    public void write(Path path, double endTime) throws IOException {
+        try (BufferedWriter out = Files.newBufferedWriter(path, StandardCharsets.UTF_8)) {
+            out.write("time,left,right,left_to_right,right_to_left\n");
+            out.write(String.format(Locale.US, "%.4f,%d,%d,0,0%n", 0.0, initialLeft, initialRight));
+            int l = initialLeft, r = initialRight;
+            int bins = Math.max(1, (int) Math.ceil(endTime / interval));
+            for (int b = 0; b < bins; b++) {
+                long lr = 0, rl = 0;
+                // El último bin se lleva también los cruces justo en endTime
+                for (int k = b; k < (b == bins - 1 ? leftToRight.length : Math.min(b + 1, leftToRight.length)); k++) {
+                    lr += leftToRight[k];
+                    rl += rightToLeft[k];
+                }
+                l += rl - lr;
+                r += lr - rl;
+                out.write(String.format(Locale.US, "%.4f,%d,%d,%d,%d%n", Math.min((b + 1) * interval, endTime), l, r, lr, rl));
+            }
+        }
+    }
+
+    /** Pipeline stage that writes the occupancy and flux next to {@code outputPath} when the run ends. */
+    public SimulationListener stage(Path outputPath) {
+        return SimulationListener.atFinish(time -> write(pathFor(outputPath), time));
+    }
+
+    public static Path pathFor(Path outputPath) {
+        return OutputWriter.siblingPath(outputPath, FILE_SUFFIX);
+    }
+}
@@ -7,6 +7,8 @@ public class Enclosure {
     private final static double DEFAULT = 0.09;
     private final double L;
     private Enclosure neighborLeft, neighborRight;
+    // Veces que una partícula se corrió hacia atrás para salir de una situación sin solución
+    private long fallbackCorrections;
 
     public Enclosure(double x0, double y0, double L) {
         this(x0, y0, DEFAULT, DEFAULT, L);
@@ -32,6 +34,52 @@ public class Enclosure {
         this.neighborRight = neighbor;
     }
 
+    public long getFallbackCorrections() {
+        return fallbackCorrections;
+    }
+
+    public double getMinX() {
+        return x0;
+    }
+
+    public double getMinY() {
+        return y0;
+    }
+
+    public double getMaxX() {
+        return x0 + 2 * width;
+    }
+
+    public double getMaxY() {
+        return y0 + height;
+    }
+
+    /** Width of each chamber; the right one starts at {@code getMinX() + getWidth()}. */
+    public double getWidth() {
+        return width;
+    }
+
+    /** Lower end of the door, which is also the bottom wall of the right chamber. */
+    public double getDoorMinY() {
+        return y0 + (height - L) / 2.0;
+    }
+
+    public double getDoorMaxY() {
+        return y0 + (height + L) / 2.0;
+    }
+
+    /**
+     * False when a disk of radius {@code reach} around (x, y) lies strictly inside one of the two chambers,
+     * so a particle that stays in it cannot hit any wall segment or the corners of the door.
+     */
+    public boolean isNearBoundary(double x, double y, double reach) {
+        boolean insideLeft = x - reach > x0 && x + reach < x0 + width
+                && y - reach > y0 && y + reach < y0 + height;
+        boolean insideRight = x - reach > x0 + width && x + reach < x0 + 2 * width
+                && y - reach > y0 + (height - L) / 2 && y + reach < y0 + (height + L) / 2;
+        return !insideLeft && !insideRight;
+    }
+
     public WallCollision timeToHitBoundary(Particle p) {
         double x = p.getX(), y = p.getY();
         double vx = p.getVx(), vy = p.getVy();
@@ -149,6 +197,7 @@ public class Enclosure {
 //            throw new RuntimeException("Shouldn't happen. No collision against enclosure found");
 //            return null;
             p.moveBackwards(0.001);
+            fallbackCorrections++;
             return timeToHitBoundary(p);
         }
 
@@ -169,6 +218,7 @@ public class Enclosure {
 
         if (dx * dx + dy * dy <= r * r) {
             p.moveBackwards(0.001);
+            fallbackCorrections++;
             x = p.getX();
             y = p.getY();
             vx = p.getVx();
@@ -278,7 +328,4 @@ public class Enclosure {
 //            // idk
 //        }
 //    }
-
-//    private double doorMinY() { return y0 + (height - L) / 2.0; }
-//    private double doorMaxY() { return y0 + (height + L) / 2.0; }
 }
@@ -0,0 +1,209 @@
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Collision statistics gathered while the events are processed (--stats), so mean free paths and collision
+ * frequencies do not need the frames:
+ * <ul>
+ *   <li>free_flight_time: time between two consecutive particle collisions of the same particle
+ *       (wall bounces do not end a flight),</li>
+ *   <li>free_path: distance travelled in that flight, |v| times its time since bounces keep the speed,</li>
+ *   <li>inter_collision_time: time between consecutive collisions (particle or wall) of the whole system,</li>
+ *   <li>hits per {@link Wall}, as rates over the simulated time.</li>
+ * </ul>
+ * The first flight of each particle starts at t = 0 and not at a collision, so it is not counted.
+ * <p>
+ * {@link #write} stores the counters and the {@link LogHistogram}s in a small CSV of variable-width rows
+ * (the first column says what the row is), which {@link #read} loads back to {@link #merge} ensemble runs:
+ * {@code java EventStatistics merged_stats.csv run_0000_stats.csv run_0001_stats.csv ...}
+ */
+public class EventStatistics {
+
+    public static final String FILE_SUFFIX = "_stats.csv";
+    private static final String HEADER = "#event-statistics,1";
+    private static final String[] HISTOGRAMS = {"free_flight_time", "free_path", "inter_collision_time"};
+
+    private final Map<String, LogHistogram> histograms = new LinkedHashMap<>();
+    private final long[] wallHits = new long[Wall.values().length];
+    private long particleCollisions;
+    private int runs;
+    private double time;
+    private double particleTime;
+
+    // Estado de la corrida, solo mientras se registran eventos
+    private final double[] lastCollision;
+    private double lastEvent = Double.NaN;
+
+    public EventStatistics(int particles) {
+        for (String name : HISTOGRAMS) {
+            histograms.put(name, new LogHistogram(-10, 4, 10));
+        }
+        lastCollision = new double[particles];
+        Arrays.fill(lastCollision, Double.NaN);
+    }
+
+    /** Records a valid event at {@code time}, before it is resolved; {@code i} and {@code j} are particle indexes, j is -1 for walls. */
+    public void record(Collision c, int i, int j, double time) {
+        if (!Double.isNaN(lastEvent)) {
+            histograms.get("inter_collision_time").add(time - lastEvent);
+        }
+        lastEvent = time;
+        if (c instanceof WallCollision wc) {
+            wallHits[wc.getWall().ordinal()]++;
+            return;
+        }
+        particleCollisions++;
+        flight(i, c.getP1(), time);
+        flight(j, c.getP2(), time);
+    }
+
+    private void flight(int i, Particle p, double time) {
+        if (!Double.isNaN(lastCollision[i])) {
+            double flight = time - lastCollision[i];
+            histograms.get("free_flight_time").add(flight);
+            histograms.get("free_path").add(Math.hypot(p.getVx(), p.getVy()) * flight);
+        }
+        lastCollision[i] = time;
+    }
+
+    /** Closes the run at {@code endTime}, adding its particle-time for the frequency estimates. */
+    public void finish(double endTime) {
+        runs++;
+        time += endTime;
+        particleTime += lastCollision.length * endTime;
+    }
+
+    public void merge(EventStatistics other) {
+        for (String name : HISTOGRAMS) {
+            histograms.get(name).merge(other.histograms.get(name));
+        }
+        for (int w = 0; w < wallHits.length; w++) wallHits[w] += other.wallHits[w];
+        particleCollisions += other.particleCollisions;
+        runs += other.runs;
+        time += other.time;
+        particleTime += other.particleTime;
+    }
+
+    public LogHistogram getHistogram(String name) {
+        return histograms.get(name);
+    }
+
+    public long getWallHits(Wall wall) {
+        return wallHits[wall.ordinal()];
+    }
+
+    public double meanFreePath() {
+        return histograms.get("free_path").mean();
+    }
+
+    public double meanFreeFlightTime() {
+        return histograms.get("free_flight_time").mean();
+    }
+
+    /** Particle collisions per particle and unit time; each collision involves two particles. */
+    public double collisionFrequency() {
+        return 2.0 * particleCollisions / particleTime;
+    }
+
+    public double wallHitRate(Wall wall) {
+        return wallHits[wall.ordinal()] / time;
+    }
+
+    public void write(Path path) throws IOException {
+        try (BufferedWriter out = Files.newBufferedWriter(path, StandardCharsets.UTF_8)) {
+            out.write(HEADER + "\n");
+            out.write(String.format(Locale.US, "runs,%d%ntime,%.17g%nparticle_time,%.17g%nparticle_collisions,%d%n",
+                    runs, time, particleTime, particleCollisions));
+            for (Wall wall : Wall.values()) {
+                out.write(String.format(Locale.US, "wall,%s,%d,%.17g%n", wall, getWallHits(wall), wallHitRate(wall)));
+            }
+            // Derivados, no se leen al combinar
+            out.write(String.format(Locale.US, "estimate,mean_free_path,%.17g%nestimate,mean_free_flight_time,%.17g%nestimate,collision_frequency,%.17g%n",
+                    meanFreePath(), meanFreeFlightTime(), collisionFrequency()));
+            for (String name : HISTOGRAMS) {
+                LogHistogram h = histograms.get(name);
+                out.write(String.format(Locale.US, "histogram,%s,%d,%d,%d,%d,%.17g,%.17g,%d,%d%n", name,
+                        h.getMinExponent(), h.getMaxExponent(), h.getBinsPerDecade(),
+                        h.getCount(), h.getSum(), h.getSumSquares(), h.getUnderflow(), h.getOverflow()));
+                for (int b = 0; b < h.getBins(); b++) {
+                    out.write(String.format(Locale.US, "bin,%s,%.17g,%.17g,%d%n", name, h.lowerBound(b), h.upperBound(b), h.getCount(b)));
+                }
+            }
+        }
+    }
+
+    public static EventStatistics read(Path path) throws IOException {
+        List<String> lines = Files.readAllLines(path, StandardCharsets.UTF_8);
+        if (lines.isEmpty() || !lines.get(0).equals(HEADER)) {
+            throw new IllegalArgumentException(path + ": not an event statistics file");
+        }
+        EventStatistics stats = new EventStatistics(0);
+        Map<String, Integer> nextBin = new LinkedHashMap<>();
+        for (int n = 1; n < lines.size(); n++) {
+            String[] f = lines.get(n).split(",");
+            try {
+                switch (f[0]) {
+                    case "runs" -> stats.runs = Integer.parseInt(f[1]);
+                    case "time" -> stats.time = Double.parseDouble(f[1]);
+                    case "particle_time" -> stats.particleTime = Double.parseDouble(f[1]);
+                    case "particle_collisions" -> stats.particleCollisions = Long.parseLong(f[1]);
+                    case "wall" -> stats.wallHits[Wall.valueOf(f[1]).ordinal()] = Long.parseLong(f[2]);
+                    case "histogram" -> {
+                        LogHistogram h = new LogHistogram(Integer.parseInt(f[2]), Integer.parseInt(f[3]), Integer.parseInt(f[4]));
+                        h.setTotals(Long.parseLong(f[5]), Double.parseDouble(f[6]), Double.parseDouble(f[7]),
+                                Long.parseLong(f[8]), Long.parseLong(f[9]));
+                        if (!stats.histograms.containsKey(f[1])) throw new IllegalArgumentException("unknown histogram " + f[1]);
+                        stats.histograms.put(f[1], h);
+                        nextBin.put(f[1], 0);
+                    }
+                    case "bin" -> {
+                        int bin = nextBin.merge(f[1], 1, Integer::sum) - 1;
+                        stats.histograms.get(f[1]).setCount(bin, Long.parseLong(f[4]));
+                    }
+                    case "estimate" -> {
+                    }
+                    default -> throw new IllegalArgumentException("unknown row " + f[0]);
+                }
+            } catch (RuntimeException e) {
+                throw new IllegalArgumentException(path + ":" + (n + 1) + ": " + e.getMessage(), e);
+            }
+        }
+        return stats;
+    }
+
+    /** Pipeline stage that closes the run and writes these statistics next to {@code outputPath}. */
+    public SimulationListener stage(Path outputPath) {
+        return SimulationListener.atFinish(time -> {
+            finish(time);
+            write(pathFor(outputPath));
+        });
+    }
+
+    /** Statistics file written next to a simulation output. */
+    public static Path pathFor(Path outputPath) {
+        return OutputWriter.siblingPath(outputPath, FILE_SUFFIX);
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 2) {
+            System.out.println("Error: Parameters should be: mergedFile statsFile [statsFile ...]");
+            return;
+        }
+        List<EventStatistics> inputs = new ArrayList<>();
+        for (int i = 1; i < args.length; i++) inputs.add(read(Path.of(args[i])));
+        EventStatistics merged = inputs.get(0);
+        for (int i = 1; i < inputs.size(); i++) merged.merge(inputs.get(i));
+        merged.write(Path.of(args[0]));
+        System.out.printf(Locale.US, "%d runs: mean free path %.6g, collision frequency %.6g%n",
+                merged.runs, merged.meanFreePath(), merged.collisionFrequency());
+    }
+}
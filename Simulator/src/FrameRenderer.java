@@ -0,0 +1,250 @@
+import javax.imageio.ImageIO;
+import java.awt.BasicStroke;
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.geom.Ellipse2D;
+import java.awt.geom.Line2D;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferByte;
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.Locale;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Renders the frames of a simulator output (CSV or binary trajectory) with Java2D, in parallel.
+ * <pre>
+ *   java FrameRenderer output_N300_L0.050_t1000_0000.csv [--L=0.05] [--stride=1] [--from=0] [--to=...]
+ *        [--width=1280] [--fps=30] [--workers=cores] [--format=video|png|raw] [--out=...]
+ * </pre>
+ * video pipes rgb24 frames to ffmpeg (the default when ffmpeg is on the PATH, otherwise png),
+ * png writes one numbered image per frame into a directory and raw concatenates the rgb24 frames in one file.
+ * L is taken from the file name when --L is not given.
+ */
+public class FrameRenderer {
+
+    private static final int MARGIN = 4;
+    private static final Pattern L_IN_NAME = Pattern.compile("_L(\\d+(?:\\.\\d+)?)");
+    private static final Color[] PALETTE = {
+            new Color(0x1f77b4), new Color(0xd62728), new Color(0x2ca02c), new Color(0xff7f0e), new Color(0x9467bd)
+    };
+
+    private final Enclosure enclosure;
+    private final int width, height;
+    private final double scale;
+
+    public FrameRenderer(double L, int width) {
+        this.enclosure = new Enclosure(0.0, 0.0, L);
+        this.width = width;
+        this.scale = (width - 2 * MARGIN) / (enclosure.getMaxX() - enclosure.getMinX());
+        this.height = (int) Math.round((enclosure.getMaxY() - enclosure.getMinY()) * scale) + 2 * MARGIN;
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    private double px(double x) {
+        return MARGIN + (x - enclosure.getMinX()) * scale;
+    }
+
+    // El eje y de la imagen crece hacia abajo
+    private double py(double y) {
+        return MARGIN + (enclosure.getMaxY() - y) * scale;
+    }
+
+    /**
+     * Draws one frame, colouring each particle by the index of its radius in {@code speciesRadii}
+     * (empty for single-species runs). Safe to call from several threads since every call uses its own image.
+     */
+    public BufferedImage render(TrajectoryReader.Frame frame, double[] speciesRadii) {
+        BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_3BYTE_BGR);
+        Graphics2D g = image.createGraphics();
+        g.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+        g.setColor(Color.WHITE);
+        g.fillRect(0, 0, width, height);
+
+        double[] v = frame.values();
+        Ellipse2D.Double disk = new Ellipse2D.Double();
+        for (int o = 0; o < v.length; o += BinaryParticleFormat.FIELDS) {
+            double r = v[o + 4];
+            int s = 0;
+            while (s < speciesRadii.length - 1 && speciesRadii[s] != r) s++;
+            g.setColor(PALETTE[s % PALETTE.length]);
+            disk.setFrame(px(v[o] - r), py(v[o + 1] + r), 2 * r * scale, 2 * r * scale);
+            g.fill(disk);
+        }
+
+        drawWalls(g);
+        g.drawString(String.format(Locale.US, "t = %.4f", frame.time()), MARGIN + 4, MARGIN + 14);
+        g.dispose();
+        return image;
+    }
+
+    private void drawWalls(Graphics2D g) {
+        double x0 = enclosure.getMinX(), y0 = enclosure.getMinY();
+        double x1 = x0 + enclosure.getWidth(), x2 = enclosure.getMaxX(), y1 = enclosure.getMaxY();
+        double doorMin = enclosure.getDoorMinY(), doorMax = enclosure.getDoorMaxY();
+        g.setColor(Color.BLACK);
+        g.setStroke(new BasicStroke(2f));
+        Line2D.Double line = new Line2D.Double();
+        double[][] walls = {
+                {x0, y0, x1, y0}, {x0, y1, x1, y1}, {x0, y0, x0, y1},
+                {x1, y0, x1, doorMin}, {x1, doorMax, x1, y1},
+                {x1, doorMin, x2, doorMin}, {x1, doorMax, x2, doorMax}, {x2, doorMin, x2, doorMax}
+        };
+        for (double[] w : walls) {
+            line.setLine(px(w[0]), py(w[1]), px(w[2]), py(w[3]));
+            g.draw(line);
+        }
+    }
+
+    /** Frame pixels as rgb24, the order ffmpeg expects with -pixel_format rgb24. */
+    static byte[] rgb(BufferedImage image) {
+        byte[] bgr = ((DataBufferByte) image.getRaster().getDataBuffer()).getData();
+        byte[] rgb = new byte[bgr.length];
+        for (int i = 0; i < bgr.length; i += 3) {
+            rgb[i] = bgr[i + 2];
+            rgb[i + 1] = bgr[i + 1];
+            rgb[i + 2] = bgr[i];
+        }
+        return rgb;
+    }
+
+    static boolean ffmpegAvailable() {
+        try {
+            Process process = new ProcessBuilder("ffmpeg", "-version").redirectErrorStream(true)
+                    .redirectOutput(ProcessBuilder.Redirect.DISCARD).start();
+            return process.waitFor() == 0;
+        } catch (IOException e) {
+            return false;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    static double lengthFromName(Path path) {
+        Matcher matcher = L_IN_NAME.matcher(path.getFileName().toString());
+        if (!matcher.find()) {
+            throw new IllegalArgumentException("Cannot read L from " + path.getFileName() + ", pass it with --L");
+        }
+        return Double.parseDouble(matcher.group(1));
+    }
+
+    /**
+     * Reads the frames in order on the calling thread and renders them on {@code workers} threads.
+     * At most two frames per worker are in flight, and video/raw frames are written in order as they finish.
+     * Returns the number of rendered frames.
+     */
+    public int renderAll(TrajectoryReader reader, int stride, double from, double to, int workers,
+                         String format, Path out, OutputStream stream) throws IOException, InterruptedException {
+        double[] speciesRadii = reader.getSpecies().stream().mapToDouble(Species::radius).toArray();
+        boolean png = format.equals("png");
+        if (png) Files.createDirectories(out);
+        ExecutorService pool = Executors.newFixedThreadPool(workers);
+        ArrayDeque<Future<byte[]>> inFlight = new ArrayDeque<>();
+        int read = 0, rendered = 0;
+        try {
+            TrajectoryReader.Frame frame;
+            while ((frame = reader.next()) != null && frame.time() <= to) {
+                if (frame.time() < from || read++ % stride != 0) continue;
+                TrajectoryReader.Frame current = frame;
+                int index = rendered++;
+                inFlight.add(pool.submit(() -> {
+                    BufferedImage image = render(current, speciesRadii);
+                    if (!png) return rgb(image);
+                    ImageIO.write(image, "png", out.resolve(String.format("frame_%06d.png", index)).toFile());
+                    return null;
+                }));
+                if (inFlight.size() >= 2 * workers) drain(inFlight.poll(), stream);
+            }
+            while (!inFlight.isEmpty()) drain(inFlight.poll(), stream);
+        } finally {
+            pool.shutdownNow();
+        }
+        return rendered;
+    }
+
+    private static void drain(Future<byte[]> future, OutputStream stream) throws IOException, InterruptedException {
+        try {
+            byte[] pixels = future.get();
+            if (pixels != null) stream.write(pixels);
+        } catch (ExecutionException e) {
+            throw new IOException("Frame rendering failed", e.getCause());
+        }
+    }
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        if (args.length < 1) {
+            System.out.println("Error: Parameters should be: outputFile [--L=] [--stride=1] [--from=] [--to=] [--width=1280] [--fps=30] [--workers=] [--format=video|png|raw] [--out=]");
+            return;
+        }
+        Path input = Path.of(args[0]);
+        SimulationOptions options = SimulationOptions.parse(args, 1);
+        double L = options.has("L") ? options.getDouble("L", 0) : lengthFromName(input);
+        int stride = options.getInt("stride", 1);
+        if (stride <= 0) throw new IllegalArgumentException("Stride should be positive: " + stride);
+        double from = options.getDouble("from", Double.NEGATIVE_INFINITY);
+        double to = options.getDouble("to", Double.POSITIVE_INFINITY);
+        int fps = options.getInt("fps", 30);
+        int workers = options.getInt("workers", Runtime.getRuntime().availableProcessors());
+        String format = options.getString("format", ffmpegAvailable() ? "video" : "png");
+        String name = input.getFileName().toString();
+        String base = name.substring(0, name.lastIndexOf('.'));
+        Path out = Path.of(options.getString("out", base + switch (format) {
+            case "video" -> ".mp4";
+            case "raw" -> ".rgb";
+            case "png" -> "_frames";
+            default -> throw new IllegalArgumentException("Unknown format " + format + ", use video, png or raw");
+        }));
+
+        // ffmpeg y yuv420p necesitan dimensiones pares
+        FrameRenderer renderer = new FrameRenderer(L, options.getInt("width", 1280) & ~1);
+        if (renderer.getHeight() % 2 != 0 && !format.equals("png")) {
+            renderer = new FrameRenderer(L, renderer.getWidth() + 2);
+        }
+        long start = System.nanoTime();
+        int frames;
+        try (TrajectoryReader reader = TrajectoryReader.open(input)) {
+            switch (format) {
+                case "png" -> frames = renderer.renderAll(reader, stride, from, to, workers, format, out, OutputStream.nullOutputStream());
+                case "raw" -> {
+                    try (OutputStream stream = new BufferedOutputStream(Files.newOutputStream(out), 1 << 20)) {
+                        frames = renderer.renderAll(reader, stride, from, to, workers, format, out, stream);
+                    }
+                }
+                default -> {
+                    Process ffmpeg = new ProcessBuilder("ffmpeg", "-y", "-loglevel", "error",
+                            "-f", "rawvideo", "-pixel_format", "rgb24",
+                            "-video_size", renderer.getWidth() + "x" + renderer.getHeight(),
+                            "-framerate", String.valueOf(fps), "-i", "-",
+                            "-pix_fmt", "yuv420p", out.toString())
+                            .redirectOutput(ProcessBuilder.Redirect.INHERIT)
+                            .redirectError(ProcessBuilder.Redirect.INHERIT)
+                            .start();
+                    try (OutputStream stream = new BufferedOutputStream(ffmpeg.getOutputStream(), 1 << 20)) {
+                        frames = renderer.renderAll(reader, stride, from, to, workers, format, out, stream);
+                    }
+                    if (ffmpeg.waitFor() != 0) throw new IOException("ffmpeg exited with " + ffmpeg.exitValue());
+                }
+            }
+        }
+        System.out.printf(Locale.US, "%d frames (%dx%d) rendered to %s in %.1f s%n", frames, renderer.getWidth(),
+                renderer.getHeight(), out, (System.nanoTime() - start) / 1e9);
+    }
+}
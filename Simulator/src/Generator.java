@@ -1,24 +1,179 @@
-import java.io.File;
+import java.io.BufferedWriter;
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
 import java.util.Locale;
+import java.util.Random;
 
 //The output file will contain the following information for each particle:
 //x, y, v_x, v_y, radius
+//in text ("input_N300_0000.txt") or, with --binary, in BinaryParticleFormat ("input_N300_0000.bin")
+//Mixtures (--species=radius:mass:fraction,...) write one "#species id radius mass" line per species first,
+//and then the species id instead of the radius on each particle.
+//With --seed=<n> every iteration draws from its own Random seeded from n and the iteration, so inputs are reproducible.
+//With --compress (or --packing=<fraction>, which also sets the radii for that packing fraction of the board) the
+//particles are placed small and grown by LubachevskyStillinger, so dense inputs that random insertion cannot place
+//are reachable; --growth-rate=<a> (0.01 by default) sets how fast, and the compression gives up as jammed after
+//--compress-events=<n> events per particle (1000 by default).
 public class Generator {
 
     private final int particleCount;
     private final double boardSize;
     private final double speed;
     private final double radius;
+    private final boolean binary;
+    private final List<Species> species;
+    private final int[] speciesCounts;
+    // null para una semilla distinta en cada corrida
+    private Long seed;
+    // 0 para inserción aleatoria directa a tamaño final
+    private double growthRate;
+    private long compressEvents;
     private static final String OUTPUT_PATH = "./inputs";
 
     public Generator(int particleCount, double boardSize, double speed, double radius) {
+        this(particleCount, boardSize, speed, radius, false);
+    }
+
+    public Generator(int particleCount, double boardSize, double speed, double radius, boolean binary) {
         this.particleCount = particleCount;
         this.boardSize = boardSize;
         this.speed = speed;
         this.radius = radius;
+        this.binary = binary;
+        this.species = List.of();
+        this.speciesCounts = new int[]{particleCount};
+    }
+
+    /** Mixture of {@code species}, with {@code fractions[s]} of the particles of species {@code s}. */
+    public Generator(int particleCount, double boardSize, double speed, List<Species> species, double[] fractions, boolean binary) {
+        if (species.isEmpty() || species.size() != fractions.length) {
+            throw new IllegalArgumentException("Each species needs a fraction");
+        }
+        this.particleCount = particleCount;
+        this.boardSize = boardSize;
+        this.speed = speed;
+        this.radius = species.get(0).radius();
+        this.binary = binary;
+        this.species = List.copyOf(species);
+        double total = Arrays.stream(fractions).sum();
+        this.speciesCounts = new int[fractions.length];
+        int assigned = 0;
+        for (int s = 0; s < fractions.length - 1; s++) {
+            speciesCounts[s] = (int) Math.round(particleCount * fractions[s] / total);
+            assigned += speciesCounts[s];
+        }
+        speciesCounts[fractions.length - 1] = particleCount - assigned;
+        if (speciesCounts[fractions.length - 1] < 0) {
+            throw new IllegalArgumentException("Invalid species fractions " + Arrays.toString(fractions));
+        }
+    }
+
+    /** Generator for the --binary and --species flags in {@code options}. */
+    public static Generator create(int particleCount, double boardSize, double speed, double radius, SimulationOptions options) {
+        boolean binary = options.has("binary");
+        Generator generator = options.has("species")
+                ? forMixture(particleCount, boardSize, speed, options.getString("species", ""), binary)
+                : new Generator(particleCount, boardSize, speed, radius, binary);
+        if (options.has(SimulationOptions.SEED)) {
+            generator.setSeed(Long.parseLong(options.getString(SimulationOptions.SEED, "")));
+        }
+        if (options.has("packing")) {
+            generator = generator.withPacking(options.getDouble("packing", 0.0));
+        }
+        if (options.has("compress") || options.has("packing")) {
+            generator.setCompression(options.getDouble("growth-rate", 0.01), options.getInt("compress-events", 1000));
+        }
+        return generator;
+    }
+
+    public void setSeed(long seed) {
+        this.seed = seed;
+    }
+
+    /**
+     * Places the particles small and grows them with {@link LubachevskyStillinger} at {@code growthRate},
+     * failing as jammed after {@code maxEventsPerParticle} events per particle.
+     */
+    public void setCompression(double growthRate, long maxEventsPerParticle) {
+        if (!(growthRate > 0)) throw new IllegalArgumentException("Growth rate should be positive: " + growthRate);
+        if (maxEventsPerParticle <= 0) throw new IllegalArgumentException("Compression events should be positive: " + maxEventsPerParticle);
+        this.growthRate = growthRate;
+        this.compressEvents = maxEventsPerParticle;
+    }
+
+    /** Area fraction of the board covered by the particles. */
+    public double packingFraction() {
+        double area = 0;
+        if (species.isEmpty()) {
+            area = particleCount * Math.PI * radius * radius;
+        } else {
+            for (Species s : species) area += speciesCounts[s.id()] * Math.PI * s.radius() * s.radius();
+        }
+        return area / (boardSize * boardSize);
+    }
+
+    /**
+     * Same generator, with its seed, output format and compression, but every radius scaled so the particles
+     * cover {@code packing} of the board. The single radius is rounded down to the 5 decimals of the text input,
+     * so the file never overlaps.
+     */
+    public Generator withPacking(double packing) {
+        if (!(packing > 0 && packing < 1)) throw new IllegalArgumentException("Packing fraction should be in (0, 1): " + packing);
+        double scale = Math.sqrt(packing / packingFraction());
+        Generator packed;
+        if (species.isEmpty()) {
+            double r = Math.floor(radius * scale * 1e5) / 1e5;
+            if (r <= 0) throw new IllegalArgumentException("Packing " + packing + " needs radii below 0.00001");
+            packed = new Generator(particleCount, boardSize, speed, r, binary);
+        } else {
+            List<Species> scaled = new ArrayList<>();
+            double[] fractions = new double[species.size()];
+            for (Species s : species) {
+                scaled.add(new Species(s.id(), s.radius() * scale, s.mass()));
+                fractions[s.id()] = speciesCounts[s.id()];
+            }
+            packed = new Generator(particleCount, boardSize, speed, scaled, fractions, binary);
+        }
+        packed.seed = seed;
+        packed.growthRate = growthRate;
+        packed.compressEvents = compressEvents;
+        return packed;
+    }
+
+    /** Random numbers of one iteration; with a seed, iteration i always gets the same sequence. */
+    private Random randomFor(int iteration) {
+        if (seed == null) return new Random();
+        return new Random(seed ^ (0x9E3779B97F4A7C15L * (iteration + 1)));
+    }
+
+    /** Parses "radius:mass:fraction,radius:mass:fraction,..." into a mixture generator. */
+    public static Generator forMixture(int particleCount, double boardSize, double speed, String spec, boolean binary) {
+        List<Species> species = new ArrayList<>();
+        String[] entries = spec.split(",");
+        double[] fractions = new double[entries.length];
+        for (String entry : entries) {
+            String[] parts = entry.split(":");
+            if (parts.length != 3) {
+                throw new IllegalArgumentException("Species should be radius:mass:fraction, found " + entry);
+            }
+            fractions[species.size()] = Double.parseDouble(parts[2]);
+            species.add(new Species(species.size(), Double.parseDouble(parts[0]), Double.parseDouble(parts[1])));
+        }
+        return new Generator(particleCount, boardSize, speed, species, fractions, binary);
+    }
+
+    public List<Species> getSpecies() {
+        return species;
+    }
+
+    public static String inputFileName(int particleCount, int iteration, boolean binary) {
+        return String.format("input_N%d_%04d%s", particleCount, iteration, binary ? BinaryParticleFormat.EXTENSION : ".txt");
     }
 
     public boolean checkOverlap(Particle p1, Particle p2) {
@@ -28,41 +183,130 @@ public class Generator {
         return distance < (p1.getRadius() + p2.getRadius());
     }
 
-    public boolean checkCollision(Particle[] particles, Particle new_particle, int created_particles) {
-        for (int i = 0; i < created_particles; i++) {
-            if (checkOverlap(particles[i], new_particle)) return true;
-        }
-        return false;
+    public boolean checkCollision(Particle[] particles, HierarchicalGrid grid, Particle new_particle) {
+        boolean[] overlap = {false};
+        grid.forEachNear(new_particle.getX(), new_particle.getY(), new_particle.getRadius(), 0.0, i -> {
+            if (!overlap[0] && checkOverlap(particles[i], new_particle)) overlap[0] = true;
+        });
+        return overlap[0];
     }
 
 
     public void generateInputs(int iteration) throws IOException {
-        String dirPath = OUTPUT_PATH + "/" + "N" + particleCount;
-        Files.createDirectories(Path.of(dirPath));
-        String fileName = String.format("input_N%d_%s.txt", particleCount, String.format("%04d", iteration));
-        File file = new File(dirPath + "/" + fileName);
-        if (file.exists()) {
-            file.delete();
-        }
-        file.createNewFile();
+        Path file = generateInputs(Path.of(OUTPUT_PATH), iteration);
+        System.out.println("File " + file.getFileName() + " created successfully.");
+    }
+
+    /**
+     * Draws the particles of {@code iteration} without writing them, largest species first.
+     * The batch mode uses it to keep its realisations in memory.
+     */
+    public List<Particle> generate(int iteration) {
+        // Las especies más grandes van primero, después es más fácil encontrarle lugar a las chicas
+        Species[] slots = new Species[particleCount];
+        double[] radii = new double[particleCount];
+        if (species.isEmpty()) {
+            Arrays.fill(radii, radius);
+        } else {
+            List<Species> bySize = new ArrayList<>(species);
+            bySize.sort((a, b) -> Double.compare(b.radius(), a.radius()));
+            int k = 0;
+            for (Species s : bySize) {
+                for (int c = 0; c < speciesCounts[s.id()]; c++) {
+                    slots[k] = s;
+                    radii[k++] = s.radius();
+                }
+            }
+        }
+        Random random = randomFor(iteration);
+        if (growthRate > 0) return compress(slots, radii, random);
+        return place(slots, radii, random);
+    }
+
+    private List<Particle> place(Species[] slots, double[] radii, Random random) {
+        HierarchicalGrid grid = new HierarchicalGrid(0, 0, boardSize, boardSize, radii, 0.0);
+
         int i = 0;
         Particle[] particles = new Particle[particleCount];
         while (i < particleCount) {
-            double x = Math.random() * (boardSize - 2 * radius) + radius;
-            double y = Math.random() * (boardSize - 2 * radius) + radius;
-            double angle = Math.random() * 2 * Math.PI;
+            double r = radii[i];
+            double x = random.nextDouble() * (boardSize - 2 * r) + r;
+            double y = random.nextDouble() * (boardSize - 2 * r) + r;
+            double angle = random.nextDouble() * 2 * Math.PI;
             double vx = speed * Math.cos(angle);
             double vy = speed * Math.sin(angle);
-            Particle new_particle = new Particle(x, y, vx, vy, radius);
-            if (!checkCollision(particles, new_particle, i)) {
+            Particle new_particle = slots[i] == null ? new Particle(x, y, vx, vy, r) : new Particle(x, y, vx, vy, slots[i]);
+            if (!checkCollision(particles, grid, new_particle)) {
                 particles[i] = new_particle;
-                String particle = String.format(Locale.US, "%.17g %.17g %.17g %.17g %.5f%n", x, y, vx, vy, radius);
-                java.nio.file.Files.write(file.toPath(), particle.getBytes(), java.nio.file.StandardOpenOption.APPEND);
+                grid.insert(i, x, y);
                 i++;
             }
 
         }
-        System.out.println("File " + file.getName() + " created successfully.");
+        return Arrays.asList(particles);
+    }
+
+    /**
+     * Random insertion at a scale where it is easy (10% of the board covered, or the target if lower), then
+     * growth to the real radii with the event-driven compression and fresh random velocities.
+     */
+    private List<Particle> compress(Species[] slots, double[] radii, Random random) {
+        int n = particleCount;
+        double g0 = Math.min(1.0, Math.sqrt(0.1 / packingFraction()));
+        double[] small = new double[n];
+        for (int i = 0; i < n; i++) small[i] = radii[i] * g0;
+        List<Particle> placed = place(new Species[n], small, random);
+        double[] x = new double[n], y = new double[n], vx = new double[n], vy = new double[n], mass = new double[n];
+        for (int i = 0; i < n; i++) {
+            Particle p = placed.get(i);
+            x[i] = p.getX();
+            y[i] = p.getY();
+            vx[i] = p.getVx();
+            vy[i] = p.getVy();
+            mass[i] = slots[i] == null ? p.getMass() : slots[i].mass();
+        }
+        LubachevskyStillinger ls = new LubachevskyStillinger(boardSize, x, y, vx, vy, radii, mass, g0, speed, growthRate);
+        long events = ls.compress(compressEvents);
+        double gap = ls.minimumGap();
+        if (gap < 0) throw new IllegalStateException("Compression left overlapping particles, relative gap " + gap);
+        ls.randomiseVelocities(random);
+        System.out.printf(Locale.US, "Compressed to packing fraction %.4f in %d events%n", packingFraction(), events);
+        Particle[] particles = new Particle[n];
+        for (int i = 0; i < n; i++) {
+            particles[i] = slots[i] == null ? new Particle(x[i], y[i], vx[i], vy[i], radii[i])
+                    : new Particle(x[i], y[i], vx[i], vy[i], slots[i]);
+        }
+        return Arrays.asList(particles);
+    }
+
+    /**
+     * Writes the input of {@code iteration} under {@code inputDir}/N{particleCount} and returns its path.
+     * The file is written under a temporary name and then moved, so it is never seen half written.
+     */
+    public Path generateInputs(Path inputDir, int iteration) throws IOException {
+        Path dirPath = Files.createDirectories(inputDir.resolve("N" + particleCount));
+        Path file = dirPath.resolve(inputFileName(particleCount, iteration, binary));
+        Path partial = dirPath.resolve(file.getFileName() + ".partial");
+        // Que no quede el otro formato de la misma iteración, el Simulator prefiere el binario
+        Files.deleteIfExists(dirPath.resolve(inputFileName(particleCount, iteration, !binary)));
+        List<Particle> particles = generate(iteration);
+        if (binary) {
+            BinaryParticleFormat.write(partial, particles, species);
+        } else {
+            try (BufferedWriter writer = Files.newBufferedWriter(partial, StandardCharsets.UTF_8)) {
+                for (Species s : species) {
+                    writer.write(String.format(Locale.US, "#species %d %.17g %.17g%n", s.id(), s.radius(), s.mass()));
+                }
+                for (Particle p : particles) {
+                    if (species.isEmpty()) {
+                        writer.write(String.format(Locale.US, "%.17g %.17g %.17g %.17g %.5f%n", p.getX(), p.getY(), p.getVx(), p.getVy(), p.getRadius()));
+                    } else {
+                        writer.write(String.format(Locale.US, "%.17g %.17g %.17g %.17g %d%n", p.getX(), p.getY(), p.getVx(), p.getVy(), p.getSpecies()));
+                    }
+                }
+            }
+        }
+        return Files.move(partial, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
     }
 
 
@@ -72,11 +316,12 @@ public class Generator {
         double speed = Double.parseDouble(args[2]);
         double radius = Double.parseDouble(args[3]);
         int iterations = Integer.parseInt(args[4]);
+        SimulationOptions options = SimulationOptions.parse(args, 5);
         if (N <= 0 || L <= 0 || speed <= 0 || radius <= 0 || iterations <= 0) {
-            System.out.println("Error: Parameters should be: N, L, speed, radius, iterations");
+            System.out.println("Error: Parameters should be: N, L, speed, radius, iterations [--binary] [--species=radius:mass:fraction,...] [--seed=n] [--packing=fraction] [--compress] [--growth-rate=a] [--compress-events=n]");
             return;
         }
-        Generator gen = new Generator(N, L, speed, radius);
+        Generator gen = create(N, L, speed, radius, options);
         for (int i = 0; i < iterations; i++) {
             gen.generateInputs(i);
         }
@@ -0,0 +1,69 @@
+import java.util.function.IntConsumer;
+
+/**
+ * Stack of {@link CellGrid}s for particles of very different sizes. Radii are grouped in levels that grow by
+ * a factor of two and each level uses cells sized for its own largest particle, so small particles are not
+ * binned in cells sized for the big ones. With a single radius it is just one {@link CellGrid}.
+ */
+public class HierarchicalGrid {
+
+    private final CellGrid[] levels;
+    private final double[] levelMaxRadius;
+    private final int[] levelOf;
+
+    /**
+     * @param radii  radius of every index that will be stored
+     * @param margin extra distance added to the cell size (e.g. the neighbour skin)
+     */
+    public HierarchicalGrid(double x0, double y0, double width, double height, double[] radii, double margin) {
+        double minRadius = Double.POSITIVE_INFINITY;
+        for (double r : radii) minRadius = Math.min(minRadius, r);
+        int count = 1;
+        levelOf = new int[radii.length];
+        for (int i = 0; i < radii.length; i++) {
+            levelOf[i] = level(radii[i], minRadius);
+            count = Math.max(count, levelOf[i] + 1);
+        }
+        levelMaxRadius = new double[count];
+        for (int i = 0; i < radii.length; i++) {
+            levelMaxRadius[levelOf[i]] = Math.max(levelMaxRadius[levelOf[i]], radii[i]);
+        }
+        levels = new CellGrid[count];
+        for (int l = 0; l < count; l++) {
+            // Niveles vacíos quedan con una sola celda
+            double cellSize = levelMaxRadius[l] > 0 ? 2 * levelMaxRadius[l] + margin : Math.max(width, height);
+            levels[l] = new CellGrid(x0, y0, width, height, cellSize, radii.length);
+        }
+    }
+
+    private static int level(double radius, double minRadius) {
+        return Math.max(0, (int) Math.floor(Math.log(radius / minRadius) / Math.log(2)));
+    }
+
+    public int getLevelCount() {
+        return levels.length;
+    }
+
+    public void insert(int i, double x, double y) {
+        levels[levelOf[i]].insert(i, x, y);
+    }
+
+    public void move(int i, double x, double y) {
+        levels[levelOf[i]].move(i, x, y);
+    }
+
+    public void remove(int i) {
+        levels[levelOf[i]].remove(i);
+    }
+
+    /**
+     * Visits every stored index that could be closer than {@code radius + r_j + margin} to (x, y),
+     * looking in each level only as far as that level's largest radius requires.
+     */
+    public void forEachNear(double x, double y, double radius, double margin, IntConsumer action) {
+        for (int l = 0; l < levels.length; l++) {
+            if (levelMaxRadius[l] == 0) continue;
+            levels[l].forEachNear(x, y, radius + levelMaxRadius[l] + margin, action);
+        }
+    }
+}
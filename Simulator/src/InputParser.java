@@ -1,36 +1,210 @@
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
 import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.IntStream;
 
 public class InputParser {
+
+    private static final int FIELDS = BinaryParticleFormat.FIELDS;
+    private static final long MIN_CHUNK_BYTES = 1 << 20;
+    private static final long MAX_CHUNK_BYTES = 64L << 20;
+    private static final String SPECIES_HEADER = "#species";
+
     private final String inputPath;
     private final int particles_amount;
+    private final List<Species> species = new ArrayList<>();
     public InputParser(String inputPath, int particles_amount) {
         this.inputPath = inputPath;
         this.particles_amount = particles_amount;
     }
-    ArrayList<Particle> parseInputs() {
-        ArrayList<Particle> particles = new ArrayList<>();
+
+    /**
+     * Reads the initial conditions, either the text format (one "x y vx vy radius" line per particle)
+     * or the {@link BinaryParticleFormat} when the file has its extension.
+     * <p>
+     * Mixtures start the text file with one "#species id radius mass" line per species, and then the last
+     * column of each particle is its species id instead of its radius.
+     * Fails with an exception on the first malformed value instead of returning a partial list.
+     * Particles are numbered by their position in the file, so every run has the same ids.
+     */
+    ArrayList<Particle> parseInputs() throws IOException {
+        Path path = Path.of(inputPath);
+        species.clear();
+        double[] values = BinaryParticleFormat.isBinary(path) ? BinaryParticleFormat.read(path, species) : parseText(path, species);
+        int count = values.length / FIELDS;
+        if (count != particles_amount) {
+            throw new IllegalArgumentException(inputPath + ": found " + count + " particles, expected " + particles_amount);
+        }
+        ArrayList<Particle> particles = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            int o = i * FIELDS;
+            for (int f = 0; f < FIELDS; f++) {
+                if (!Double.isFinite(values[o + f])) {
+                    throw new IllegalArgumentException(inputPath + ": particle " + i + " has a non finite value");
+                }
+            }
+            if (!species.isEmpty()) {
+                int id = (int) values[o + 4];
+                if (id != values[o + 4] || id < 0 || id >= species.size()) {
+                    throw new IllegalArgumentException(inputPath + ": particle " + i + " has an unknown species " + values[o + 4]);
+                }
+                Species s = species.get(id);
+                particles.add(new Particle(i, values[o], values[o + 1], values[o + 2], values[o + 3], s.radius(), s.mass(), s.id()));
+                continue;
+            }
+            if (values[o + 4] <= 0) {
+                throw new IllegalArgumentException(inputPath + ": particle " + i + " has a non positive radius");
+            }
+            particles.add(new Particle(i, values[o], values[o + 1], values[o + 2], values[o + 3], values[o + 4], 1.0, 0));
+        }
+        return particles;
+    }
+
+    /** Species declared by the last parsed file, empty for single-species inputs. */
+    public List<Species> getSpecies() {
+        return List.copyOf(species);
+    }
+
+    /**
+     * Splits the file in chunks aligned to line boundaries and parses them in parallel.
+     * The particles keep the file order because each chunk writes to its own array.
+     */
+    private static double[] parseText(Path path, List<Species> species) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            long size = channel.size();
+            long dataStart = parseHeader(path, channel, species);
+            int processors = Runtime.getRuntime().availableProcessors();
+            long chunkBytes = Math.min(MAX_CHUNK_BYTES, Math.max(MIN_CHUNK_BYTES, (size - dataStart) / processors + 1));
+            int chunks = (int) Math.max(1, (size - dataStart + chunkBytes - 1) / chunkBytes);
+            long[] starts = new long[chunks + 1];
+            starts[0] = dataStart;
+            for (int i = 1; i < chunks; i++) {
+                starts[i] = nextLineStart(channel, Math.max(dataStart + i * chunkBytes, starts[i - 1]), size);
+            }
+            starts[chunks] = size;
+
+            double[][] parsed;
+            try {
+                parsed = IntStream.range(0, chunks).parallel()
+                        .mapToObj(i -> parseChunk(path, channel, starts[i], starts[i + 1]))
+                        .toArray(double[][]::new);
+            } catch (UncheckedIOException e) {
+                throw e.getCause();
+            }
+
+            int total = 0;
+            for (double[] chunk : parsed) total += chunk.length;
+            double[] values = new double[total];
+            int offset = 0;
+            for (double[] chunk : parsed) {
+                System.arraycopy(chunk, 0, values, offset, chunk.length);
+                offset += chunk.length;
+            }
+            return values;
+        }
+    }
+
+    /** Reads the leading '#' lines and returns the offset of the first particle line. */
+    private static long parseHeader(Path path, FileChannel channel, List<Species> species) throws IOException {
+        long position = 0;
+        long size = channel.size();
+        ByteBuffer first = ByteBuffer.allocate(1);
+        while (position < size) {
+            first.clear();
+            channel.read(first, position);
+            if (first.get(0) != '#') break;
+            long next = nextLineStart(channel, position, size);
+            ByteBuffer line = ByteBuffer.allocate((int) (next - position));
+            channel.read(line, position);
+            String text = new String(line.array(), StandardCharsets.US_ASCII).strip();
+            if (text.startsWith(SPECIES_HEADER)) {
+                String[] parts = text.substring(SPECIES_HEADER.length()).strip().split(" ");
+                try {
+                    if (parts.length != 3 || Integer.parseInt(parts[0]) != species.size()) {
+                        throw new NumberFormatException();
+                    }
+                    species.add(new Species(species.size(), Double.parseDouble(parts[1]), Double.parseDouble(parts[2])));
+                } catch (NumberFormatException e) {
+                    throw new IllegalArgumentException("Invalid species header in " + path + " at byte " + position
+                            + ": expected \"#species " + species.size() + " radius mass\"");
+                }
+            }
+            position = next;
+        }
+        return position;
+    }
+
+    private static long nextLineStart(FileChannel channel, long from, long size) throws IOException {
+        ByteBuffer window = ByteBuffer.allocate(4096);
+        long position = from;
+        while (position < size) {
+            window.clear();
+            int read = channel.read(window, position);
+            if (read <= 0) break;
+            for (int k = 0; k < read; k++) {
+                if (window.get(k) == '\n') return position + k + 1;
+            }
+            position += read;
+        }
+        return size;
+    }
+
+    private static double[] parseChunk(Path path, FileChannel channel, long start, long end) {
+        byte[] bytes = new byte[(int) (end - start)];
         try {
-            java.util.List<String> lines = java.nio.file.Files.readAllLines(java.nio.file.Path.of(inputPath));
-            for (String line : lines) {
-                String[] parts = line.split(" ");
-                if (parts.length != 5) {
-                    throw new IllegalArgumentException("Invalid input format");
+            channel.map(FileChannel.MapMode.READ_ONLY, start, bytes.length).get(bytes);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        double[] values = new double[64 * FIELDS];
+        int count = 0;
+        int lineStart = 0;
+        while (lineStart < bytes.length) {
+            int lineEnd = lineStart;
+            while (lineEnd < bytes.length && bytes[lineEnd] != '\n') lineEnd++;
+            int contentEnd = lineEnd;
+            if (contentEnd > lineStart && bytes[contentEnd - 1] == '\r') contentEnd--;
+            if (contentEnd > lineStart) {
+                if (count + FIELDS > values.length) {
+                    double[] grown = new double[values.length * 2];
+                    System.arraycopy(values, 0, grown, 0, count);
+                    values = grown;
+                }
+                int fields = 0;
+                int tokenStart = lineStart;
+                for (int k = lineStart; k <= contentEnd; k++) {
+                    if (k < contentEnd && bytes[k] != ' ') continue;
+                    if (fields == FIELDS) {
+                        throw invalidLine(path, start + lineStart);
+                    }
+                    try {
+                        values[count + fields++] = Double.parseDouble(new String(bytes, tokenStart, k - tokenStart, StandardCharsets.US_ASCII));
+                    } catch (NumberFormatException e) {
+                        throw invalidLine(path, start + lineStart);
+                    }
+                    tokenStart = k + 1;
                 }
-                double x = Double.parseDouble(parts[0]);
-                double y = Double.parseDouble(parts[1]);
-                double vx = Double.parseDouble(parts[2]);
-                double vy = Double.parseDouble(parts[3]);
-                double radius = Double.parseDouble(parts[4]);
-                Particle particle = new Particle(x, y, vx, vy, radius);
-                particles.add(particle);
-            }
-            if (particles.size() != particles_amount) {
-                throw new IllegalArgumentException("Number of particles does not match the expected amount");
-            }
-        } catch (Exception e) {
-            e.printStackTrace();
+                if (fields != FIELDS) {
+                    throw invalidLine(path, start + lineStart);
+                }
+                count += FIELDS;
+            }
+            lineStart = lineEnd + 1;
         }
-        return  particles;
+        double[] trimmed = new double[count];
+        System.arraycopy(values, 0, trimmed, 0, count);
+        return trimmed;
+    }
+
+    private static IllegalArgumentException invalidLine(Path path, long offset) {
+        return new IllegalArgumentException("Invalid input format in " + path + " at byte " + offset
+                + ": expected \"x y vx vy radius\" (or \"x y vx vy species\" after #species headers)");
     }
 
 }
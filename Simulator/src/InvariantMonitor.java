@@ -0,0 +1,180 @@
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Checks the run every {@code interval} events (--monitor=&lt;events&gt;) and writes one line per sample to
+ * output_*_monitor.csv:
+ * <ul>
+ *   <li>kinetic energy, which elastic collisions and wall bounces conserve (relative drift up to --energy-tolerance),</li>
+ *   <li>overlapping pairs, looked up in the engine's {@link NeighbourLists} when there are, otherwise in a
+ *       {@link HierarchicalGrid} kept by the monitor,</li>
+ *   <li>particles whose centre left both chambers,</li>
+ *   <li>the {@code moveBackwards} fallbacks of {@link Enclosure}, at most --max-corrections if given.</li>
+ * </ul>
+ * Total momentum is written too, but walls do not conserve it so it is not checked.
+ * On the first broken invariant the run is flagged (--monitor-action=flag, the default) or stopped with an
+ * {@link IllegalStateException} (--monitor-action=abort).
+ */
+public class InvariantMonitor implements AutoCloseable, SimulationListener {
+
+    public static final String FILE_SUFFIX = "_monitor.csv";
+    // Distancia relativa a r1 + r2 por debajo de la cual un par cuenta como superpuesto
+    private static final double OVERLAP_TOLERANCE = 1e-6;
+
+    public enum Action { FLAG, ABORT }
+
+    private final BufferedWriter out;
+    private final int interval;
+    private final Action action;
+    private final double energyTolerance;
+    private final long maxCorrections;
+    private final List<Particle> particles;
+    private final Enclosure enclosure;
+    private final double[] radii;
+    private HierarchicalGrid grid;
+    private double initialEnergy = Double.NaN;
+    private String violation;
+    private CollisionSystemPriorityQueue system;
+
+    public InvariantMonitor(Path path, List<Particle> particles, double L, SimulationOptions options) throws IOException {
+        this.interval = options.getInt(SimulationOptions.MONITOR, 1000);
+        if (interval <= 0) throw new IllegalArgumentException("Monitor interval should be positive: " + interval);
+        this.action = Action.valueOf(options.getString("monitor-action", "flag").toUpperCase(Locale.ROOT));
+        this.energyTolerance = options.getDouble("energy-tolerance", 1e-6);
+        this.maxCorrections = options.has("max-corrections") ? options.getInt("max-corrections", 0) : Long.MAX_VALUE;
+        this.particles = particles;
+        this.enclosure = new Enclosure(0.0, 0.0, L);
+        this.radii = new double[particles.size()];
+        for (int i = 0; i < radii.length; i++) radii[i] = particles.get(i).getRadius();
+        this.out = Files.newBufferedWriter(path, StandardCharsets.UTF_8);
+        out.write("event,time,kinetic_energy,relative_drift,px,py,overlaps,escaped,corrections,status\n");
+    }
+
+    public static Path pathFor(Path outputPath) {
+        return OutputWriter.siblingPath(outputPath, FILE_SUFFIX);
+    }
+
+    /** Samples the initial state, as event 0. */
+    @Override
+    public void onStart(Run run) throws IOException {
+        system = run.system();
+        sample(0, 0.0, system);
+    }
+
+    @Override
+    public boolean wantsEvents() {
+        return true;
+    }
+
+    @Override
+    public void onEvent(Event event) throws IOException {
+        event(event.step(), event.time(), system);
+    }
+
+    @Override
+    public void onFinish(long step, double time) throws IOException {
+        sample(step, time, system);
+    }
+
+    /** Called after every event; only samples every {@code interval} events and at event 0. */
+    public void event(long event, double time, CollisionSystemPriorityQueue system) throws IOException {
+        if (event % interval == 0) sample(event, time, system);
+    }
+
+    public void sample(long event, double time, CollisionSystemPriorityQueue system) throws IOException {
+        double energy = 0, px = 0, py = 0;
+        int escaped = 0;
+        for (Particle p : particles) {
+            double m = p.getMass();
+            energy += 0.5 * m * (p.getVx() * p.getVx() + p.getVy() * p.getVy());
+            px += m * p.getVx();
+            py += m * p.getVy();
+            if (!inside(p.getX(), p.getY())) escaped++;
+        }
+        if (Double.isNaN(initialEnergy)) initialEnergy = energy;
+        double drift = Math.abs(energy - initialEnergy) / initialEnergy;
+        long overlaps = overlaps(system);
+        long corrections = system.getFallbackCorrections();
+
+        String broken = null;
+        if (!(drift <= energyTolerance)) {
+            broken = "kinetic energy drift " + drift;
+        } else if (overlaps > 0) {
+            broken = overlaps + " overlapping pairs";
+        } else if (escaped > 0) {
+            broken = escaped + " particles outside the enclosure";
+        } else if (corrections > maxCorrections) {
+            broken = corrections + " fallback corrections";
+        }
+        out.write(String.format(Locale.US, "%d,%.17g,%.17g,%.3e,%.17g,%.17g,%d,%d,%d,%s%n", event, time, energy, drift,
+                px, py, overlaps, escaped, corrections, broken == null ? "ok" : "VIOLATION"));
+        if (broken != null && violation == null) {
+            violation = "event " + event + ", t = " + time + ": " + broken;
+            out.flush();
+            if (action == Action.ABORT) {
+                throw new IllegalStateException("Invariant broken at " + violation);
+            }
+            System.err.println("Warning: invariant broken at " + violation);
+        }
+    }
+
+    /** First broken invariant, or null if the run is fine so far. */
+    public String getViolation() {
+        return violation;
+    }
+
+    private boolean inside(double x, double y) {
+        double middle = enclosure.getMinX() + enclosure.getWidth();
+        boolean left = x >= enclosure.getMinX() && x <= middle && y >= enclosure.getMinY() && y <= enclosure.getMaxY();
+        boolean right = x >= middle && x <= enclosure.getMaxX() && y >= enclosure.getDoorMinY() && y <= enclosure.getDoorMaxY();
+        return left || right;
+    }
+
+    private long overlaps(CollisionSystemPriorityQueue system) {
+        NeighbourLists neighbours = system.getNeighbourLists();
+        long count = 0;
+        if (neighbours != null) {
+            // Dos partículas superpuestas siempre están en la lista de la otra; índices del motor
+            for (int i = 0; i < particles.size(); i++) {
+                int[] list = neighbours.neighbours(i);
+                for (int k = 0; k < neighbours.size(i); k++) {
+                    if (list[k] > i && overlap(system.getParticle(i), system.getParticle(list[k]))) count++;
+                }
+            }
+            return count;
+        }
+        if (grid == null) {
+            grid = new HierarchicalGrid(enclosure.getMinX(), enclosure.getMinY(), enclosure.getMaxX() - enclosure.getMinX(),
+                    enclosure.getMaxY() - enclosure.getMinY(), radii, 0.0);
+            for (int i = 0; i < particles.size(); i++) grid.insert(i, particles.get(i).getX(), particles.get(i).getY());
+        } else {
+            for (int i = 0; i < particles.size(); i++) grid.move(i, particles.get(i).getX(), particles.get(i).getY());
+        }
+        long[] found = {0};
+        for (int i = 0; i < particles.size(); i++) {
+            final int self = i;
+            Particle p = particles.get(i);
+            grid.forEachNear(p.getX(), p.getY(), radii[i], 0.0, j -> {
+                if (j > self && overlap(p, particles.get(j))) found[0]++;
+            });
+        }
+        return found[0];
+    }
+
+    private boolean overlap(Particle a, Particle b) {
+        double dx = a.getX() - b.getX();
+        double dy = a.getY() - b.getY();
+        double sigma = (a.getRadius() + b.getRadius()) * (1 - OVERLAP_TOLERANCE);
+        return dx * dx + dy * dy < sigma * sigma;
+    }
+
+    @Override
+    public void close() throws IOException {
+        out.close();
+    }
+}
@@ -0,0 +1,187 @@
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * Dispatches the hooks of the event loop to its {@link SimulationListener} stages, in the order they were
+ * added. Inline stages are called right away. Async stages get the same records through one worker thread:
+ * records are grouped in batches of --async-batch (256 by default) and at most --async-queue batches (64) wait,
+ * after which the simulation blocks until the stages catch up. Frames are only copied for the async lane when
+ * one of its stages wants that step, and events are only built when a stage asks for them with
+ * {@link SimulationListener#wantsEvents}. With no stages, or none in a lane, that lane costs nothing; the
+ * worker thread only exists if there is an async stage.
+ */
+public class ListenerPipeline implements AutoCloseable {
+
+    private static final List<Object> END = new ArrayList<>();
+
+    private record Finish(long step, double time) {
+    }
+
+    private final List<SimulationListener> inline = new ArrayList<>();
+    private final List<SimulationListener> async = new ArrayList<>();
+    // Las que piden eventos, de cada carril
+    private final List<SimulationListener> inlineEvents = new ArrayList<>();
+    private final List<SimulationListener> asyncEvents = new ArrayList<>();
+    private final int batchSize;
+    private final BlockingQueue<List<Object>> queue;
+    private List<Object> batch;
+    private Thread worker;
+    private volatile Throwable failure;
+
+    public ListenerPipeline(SimulationOptions options) {
+        this.batchSize = options.getInt("async-batch", 256);
+        int capacity = options.getInt("async-queue", 64);
+        if (batchSize <= 0 || capacity <= 0) {
+            throw new IllegalArgumentException("Async batch and queue should be positive: " + batchSize + ", " + capacity);
+        }
+        this.queue = new ArrayBlockingQueue<>(capacity);
+        this.batch = new ArrayList<>(batchSize);
+    }
+
+    /** Adds a stage; null is ignored, so optional stages can be passed as they are. */
+    public ListenerPipeline add(SimulationListener listener) {
+        if (listener == null) return this;
+        if (worker != null) throw new IllegalStateException("Stages must be added before the run starts");
+        boolean isAsync = listener.lane() == SimulationListener.Lane.ASYNC;
+        (isAsync ? async : inline).add(listener);
+        if (listener.wantsEvents()) (isAsync ? asyncEvents : inlineEvents).add(listener);
+        return this;
+    }
+
+    public void start(SimulationListener.Run run) throws IOException {
+        for (SimulationListener l : inline) l.onStart(run);
+        if (async.isEmpty()) return;
+        // Las etapas async solo pueden mirar el tamaño de la caja
+        SimulationListener.Run detached = new SimulationListener.Run(List.of(), run.L(), null);
+        for (SimulationListener l : async) l.onStart(detached);
+        worker = new Thread(this::drain, "listener-pipeline");
+        worker.setDaemon(true);
+        worker.start();
+    }
+
+    public void event(long step, double time, WallCollisionDTO wall, Collision c) throws IOException {
+        if (inlineEvents.isEmpty() && asyncEvents.isEmpty()) return;
+        SimulationListener.Event event = new SimulationListener.Event(step, time, wall,
+                c == null ? -1 : c.getP1().getId(), c == null || c.getP2() == null ? -1 : c.getP2().getId());
+        for (SimulationListener l : inlineEvents) l.onEvent(event);
+        if (!asyncEvents.isEmpty()) submit(event);
+    }
+
+    public void frame(long step, double time, WallCollisionDTO wall, List<Particle> particles) throws IOException {
+        SimulationListener.Frame frame = null;
+        for (SimulationListener l : inline) {
+            if (!wants(l, step)) continue;
+            if (frame == null) frame = new SimulationListener.Frame(step, time, wall, particles);
+            l.onFrame(frame);
+        }
+        for (SimulationListener l : async) {
+            if (wants(l, step)) {
+                List<Particle> copies = new ArrayList<>(particles.size());
+                for (Particle p : particles) {
+                    copies.add(new Particle(p.getId(), p.getX(), p.getY(), p.getVx(), p.getVy(), p.getRadius(),
+                            p.getMass(), p.getSpecies()));
+                }
+                submit(new SimulationListener.Frame(step, time, wall, copies));
+                return;
+            }
+        }
+    }
+
+    /** Calls {@code onFinish} on every stage and waits for the async lane to process everything. */
+    public void finish(long step, double time) throws IOException {
+        for (SimulationListener l : inline) l.onFinish(step, time);
+        if (worker == null) return;
+        submit(new Finish(step, time));
+        flush();
+        put(END);
+        try {
+            worker.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for the async stages", e);
+        }
+        worker = null;
+        rethrow();
+    }
+
+    private static boolean wants(SimulationListener l, long step) {
+        int interval = l.frameInterval();
+        return interval > 0 && step % interval == 0;
+    }
+
+    private void submit(Object record) throws IOException {
+        rethrow();
+        batch.add(record);
+        if (batch.size() >= batchSize) flush();
+    }
+
+    private void flush() {
+        if (batch.isEmpty()) return;
+        put(batch);
+        batch = new ArrayList<>(batchSize);
+    }
+
+    private void put(List<Object> records) {
+        try {
+            queue.put(records);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while queueing for the async stages", e);
+        }
+    }
+
+    private void drain() {
+        try {
+            while (true) {
+                List<Object> records = queue.take();
+                if (records == END) return;
+                for (Object record : records) {
+                    if (record instanceof SimulationListener.Event e) {
+                        for (SimulationListener l : asyncEvents) l.onEvent(e);
+                        continue;
+                    }
+                    for (SimulationListener l : async) {
+                        if (record instanceof SimulationListener.Frame f) {
+                            if (wants(l, f.step())) l.onFrame(f);
+                        } else if (record instanceof Finish f) {
+                            l.onFinish(f.step(), f.time());
+                        }
+                    }
+                }
+            }
+        } catch (Throwable t) {
+            failure = t;
+            // Vacía la cola para que el hilo de la simulación no quede bloqueado en put
+            queue.clear();
+            while (true) {
+                try {
+                    if (queue.take() == END) return;
+                } catch (InterruptedException e) {
+                    return;
+                }
+            }
+        }
+    }
+
+    private void rethrow() throws IOException {
+        Throwable t = failure;
+        if (t == null) return;
+        failure = null;
+        if (t instanceof IOException e) throw e;
+        if (t instanceof RuntimeException e) throw e;
+        if (t instanceof Error e) throw e;
+        throw new IllegalStateException("Async stage failed", t);
+    }
+
+    /** Stops the worker if the run ended without {@link #finish}, e.g. after an exception. */
+    @Override
+    public void close() {
+        if (worker != null) {
+            worker.interrupt();
+            worker = null;
+        }
+    }
+}
@@ -0,0 +1,177 @@
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Publishes observables of a running simulation on localhost (--live=&lt;port&gt;), every --live-interval events
+ * (1000 by default):
+ * <ul>
+ *   <li>{@code GET /snapshot}: the latest snapshot as one JSON object,</li>
+ *   <li>{@code GET /stream}: one JSON line per new snapshot until the run ends or the client hangs up.</li>
+ * </ul>
+ * Pressures are per unit mass, 2|v| over the window time and the wall length of each chamber, as in
+ * Pythoner/stationary.py. The event loop only builds an immutable {@link Snapshot} and swaps it into an
+ * {@link AtomicReference}; clients are served from their own threads, so a slow one never stalls the run and
+ * simply misses intermediate snapshots.
+ */
+public class LiveStream implements AutoCloseable, SimulationListener {
+
+    private static final long POLL_MILLIS = 20;
+
+    public record Snapshot(long sequence, long event, double time, int leftCount, int rightCount,
+                           double leftPressure, double rightPressure, double eventsPerSecond,
+                           double timePerSecond, long wallHits, boolean finished) {
+
+        public String toJson() {
+            return String.format(Locale.US, "{\"sequence\":%d,\"event\":%d,\"time\":%.17g,\"left\":%d,\"right\":%d,"
+                            + "\"left_pressure\":%.6e,\"right_pressure\":%.6e,\"events_per_second\":%.6e,"
+                            + "\"time_per_second\":%.6e,\"wall_hits\":%d,\"finished\":%b}",
+                    sequence, event, time, leftCount, rightCount, leftPressure, rightPressure, eventsPerSecond,
+                    timePerSecond, wallHits, finished);
+        }
+    }
+
+    private final HttpServer server;
+    private final ExecutorService clients;
+    private final AtomicReference<Snapshot> latest = new AtomicReference<>();
+    private final int interval;
+    private final List<Particle> particles;
+    private final double middle, leftLength, rightLength;
+
+    // Ventana actual, solo la toca el hilo de la simulación
+    private double leftImpulse, rightImpulse;
+    private long wallHits;
+    private long windowEvent;
+    private double windowTime;
+    private long windowNanos = System.nanoTime();
+    private long sequence;
+
+    public LiveStream(List<Particle> particles, double L, SimulationOptions options) throws IOException {
+        this.interval = options.getInt("live-interval", 1000);
+        if (interval <= 0) throw new IllegalArgumentException("Live interval should be positive: " + interval);
+        this.particles = particles;
+        Enclosure enclosure = new Enclosure(0.0, 0.0, L);
+        double S = enclosure.getWidth();
+        double door = enclosure.getDoorMaxY() - enclosure.getDoorMinY();
+        this.middle = enclosure.getMinX() + S;
+        this.leftLength = 4 * S - door;
+        this.rightLength = 2 * S + door;
+
+        int port = options.getInt(SimulationOptions.LIVE, 0);
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 0);
+        clients = Executors.newCachedThreadPool(r -> {
+            Thread thread = new Thread(r, "live-stream");
+            thread.setDaemon(true);
+            return thread;
+        });
+        server.setExecutor(clients);
+        server.createContext("/snapshot", this::snapshot);
+        server.createContext("/stream", this::stream);
+        server.start();
+        System.out.println("Live observables on http://localhost:" + server.getAddress().getPort() + "/stream");
+    }
+
+    public int getPort() {
+        return server.getAddress().getPort();
+    }
+
+    @Override
+    public void onFrame(Frame frame) {
+        event(frame.step(), frame.time(), frame.wall());
+    }
+
+    @Override
+    public void onFinish(long step, double time) {
+        finish(step, time);
+    }
+
+    /** Called once per processed event with its wall collision, if any; publishes every {@code interval} events. */
+    public void event(long event, double time, WallCollisionDTO wall) {
+        if (wall != null && wall.wall() != Wall.CORNER) {
+            wallHits++;
+            if (wall.wall().ordinal() <= Wall.RIGHT_1.ordinal()) {
+                leftImpulse += 2 * wall.normalSpeedAbs();
+            } else {
+                rightImpulse += 2 * wall.normalSpeedAbs();
+            }
+        }
+        if (event % interval == 0) publish(event, time, false);
+    }
+
+    /** Last snapshot of the run, after which streams end. */
+    public void finish(long event, double time) {
+        publish(event, time, true);
+    }
+
+    public Snapshot getLatest() {
+        return latest.get();
+    }
+
+    private void publish(long event, double time, boolean finished) {
+        int right = 0;
+        for (Particle p : particles) {
+            if (p.getX() > middle) right++;
+        }
+        long now = System.nanoTime();
+        double seconds = (now - windowNanos) / 1e9;
+        double dt = time - windowTime;
+        double leftPressure = dt > 0 ? leftImpulse / (dt * leftLength) : 0.0;
+        double rightPressure = dt > 0 ? rightImpulse / (dt * rightLength) : 0.0;
+        latest.set(new Snapshot(++sequence, event, time, particles.size() - right, right, leftPressure, rightPressure,
+                seconds > 0 ? (event - windowEvent) / seconds : 0.0, seconds > 0 ? dt / seconds : 0.0, wallHits, finished));
+        leftImpulse = rightImpulse = 0;
+        windowEvent = event;
+        windowTime = time;
+        windowNanos = now;
+    }
+
+    private void snapshot(HttpExchange exchange) throws IOException {
+        Snapshot s = latest.get();
+        byte[] body = ((s == null ? "{}" : s.toJson()) + "\n").getBytes(StandardCharsets.US_ASCII);
+        exchange.getResponseHeaders().set("Content-Type", "application/json");
+        exchange.sendResponseHeaders(200, body.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(body);
+        }
+    }
+
+    private void stream(HttpExchange exchange) throws IOException {
+        exchange.getResponseHeaders().set("Content-Type", "application/x-ndjson");
+        exchange.sendResponseHeaders(200, 0);
+        long sent = 0;
+        try (OutputStream out = exchange.getResponseBody()) {
+            while (true) {
+                Snapshot s = latest.get();
+                if (s != null && s.sequence() != sent) {
+                    out.write((s.toJson() + "\n").getBytes(StandardCharsets.US_ASCII));
+                    out.flush();
+                    sent = s.sequence();
+                    if (s.finished()) return;
+                } else {
+                    Thread.sleep(POLL_MILLIS);
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (IOException e) {
+            // El cliente cerró la conexión
+        }
+    }
+
+    @Override
+    public void close() {
+        // Deja un momento a los streams abiertos para mandar el último snapshot
+        server.stop(1);
+        clients.shutdownNow();
+    }
+}
@@ -0,0 +1,127 @@
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Measures the effect of sorting the engine's storage along a Morton curve (--reorder) on a large system, first
+ * on a sweep of pair times over every neighbour list (the access pattern of the predictions) and then on the
+ * whole engine.
+ * <pre>
+ *   java LocalityBenchmark [N=100000] [events=200000] [--radius=0.00005] [--speed=0.01] [--skin=0.001]
+ *        [--reorder=10000] [--seed=1] [--L=0.05]
+ * </pre>
+ * The same generated input is run with the input order and with periodic reordering, both with
+ * --deterministic so the two trajectories must end in exactly the same state, which is checked.
+ * Generator places the particles at random, so the input order has no spatial locality. The engine still moves
+ * every particle on each event, which does not depend on the order and dominates at this size.
+ */
+public class LocalityBenchmark {
+
+    public static void main(String[] args) {
+        int positional = 0;
+        while (positional < args.length && !args[positional].startsWith("--")) positional++;
+        int N = positional > 0 ? Integer.parseInt(args[0]) : 100_000;
+        int events = positional > 1 ? Integer.parseInt(args[1]) : 200_000;
+        SimulationOptions options = SimulationOptions.parse(args, positional);
+        double radius = options.getDouble("radius", 0.00005);
+        double L = options.getDouble("L", 0.05);
+        if (!options.has(SimulationOptions.SEED)) options.set(SimulationOptions.SEED, "1");
+        Generator generator = Generator.create(N, SweepOrchestrator.BOARD_SIZE, options.getDouble("speed", 0.01), radius, options);
+        List<Particle> input = generator.generate(0);
+
+        SimulationOptions plain = new SimulationOptions()
+                .set(SimulationOptions.SKIN, options.getString(SimulationOptions.SKIN, "0.001"))
+                .set(SimulationOptions.DETERMINISTIC, "true");
+        SimulationOptions sorted = new SimulationOptions()
+                .set(SimulationOptions.SKIN, options.getString(SimulationOptions.SKIN, "0.001"))
+                .set(SimulationOptions.DETERMINISTIC, "true")
+                .set(SimulationOptions.REORDER, options.getString(SimulationOptions.REORDER, "10000"));
+
+        String skin = plain.getString(SimulationOptions.SKIN, "");
+        double[] inputSweep = sweep(input, Double.parseDouble(skin), L, false);
+        double[] sortedSweep = sweep(input, Double.parseDouble(skin), L, true);
+        System.out.printf(Locale.US, "N=%d, neighbour sweep (%.1f neighbours per particle)%n", N, inputSweep[1]);
+        System.out.printf(Locale.US, "  input order:  %.2f ms per sweep%n", inputSweep[0] * 1e3);
+        System.out.printf(Locale.US, "  Morton order: %.2f ms per sweep, speed-up %.2fx%n", sortedSweep[0] * 1e3,
+                inputSweep[0] / sortedSweep[0]);
+
+        // Calentamiento del JIT con las dos variantes
+        run(input, L, plain, Math.min(events, 5_000));
+        run(input, L, sorted, Math.min(events, 5_000));
+
+        Result a = run(input, L, plain, events);
+        Result b = run(input, L, sorted, events);
+        System.out.printf(Locale.US, "N=%d, %d events, skin %s%n", N, events, skin);
+        System.out.printf(Locale.US, "  input order:        %.3f s (%.3g events/s)%n", a.seconds, events / a.seconds);
+        System.out.printf(Locale.US, "  Morton every %s: %.3f s (%.3g events/s), speed-up %.2fx%n",
+                sorted.getString(SimulationOptions.REORDER, ""), b.seconds, events / b.seconds, a.seconds / b.seconds);
+        System.out.println(a.state.equals(b.state) ? "  same final state" : "  FINAL STATES DIFFER");
+    }
+
+    /** Seconds per sweep of pair times over all neighbour lists, and mean list size. */
+    private static double[] sweep(List<Particle> input, double skin, double L, boolean morton) {
+        int n = input.size();
+        double[] xs = new double[n], ys = new double[n], vxs = new double[n], vys = new double[n], radii = new double[n];
+        for (int i = 0; i < n; i++) {
+            Particle p = input.get(i);
+            xs[i] = p.getX();
+            ys[i] = p.getY();
+            vxs[i] = p.getVx();
+            vys[i] = p.getVy();
+            radii[i] = p.getRadius();
+        }
+        Enclosure enclosure = new Enclosure(0.0, 0.0, L);
+        if (morton) {
+            int[] order = MortonOrder.order(xs, ys, n, enclosure.getMinX(), enclosure.getMinY(),
+                    enclosure.getMaxX() - enclosure.getMinX(), enclosure.getMaxY() - enclosure.getMinY());
+            for (double[] values : new double[][]{xs, ys, vxs, vys, radii}) {
+                double[] old = values.clone();
+                for (int k = 0; k < n; k++) values[k] = old[order[k]];
+            }
+        }
+        NeighbourLists lists = new NeighbourLists(skin, xs, ys, radii, enclosure);
+        long pairs = 0;
+        double checksum = 0;
+        int sweeps = 20;
+        long start = 0;
+        for (int s = -5; s < sweeps; s++) {
+            if (s == 0) start = System.nanoTime();
+            for (int i = 0; i < n; i++) {
+                int[] list = lists.neighbours(i);
+                for (int k = 0; k < lists.size(i); k++) {
+                    int j = list[k];
+                    double t = PairTimeKernel.timeToHit(xs[i], ys[i], vxs[i], vys[i], radii[i],
+                            xs[j], ys[j], vxs[j], vys[j], radii[j]);
+                    if (t < Particle.NO_HIT_TIME) checksum += t;
+                }
+                if (s == 0) pairs += lists.size(i);
+            }
+        }
+        double seconds = (System.nanoTime() - start) / 1e9 / sweeps;
+        if (checksum == 42) System.out.println();
+        return new double[]{seconds, (double) pairs / n};
+    }
+
+    private record Result(double seconds, List<Double> state) {
+    }
+
+    private static Result run(List<Particle> input, double L, SimulationOptions options, int events) {
+        List<Particle> particles = new ArrayList<>(input.size());
+        for (Particle p : input) {
+            particles.add(new Particle(p.getId(), p.getX(), p.getY(), p.getVx(), p.getVy(), p.getRadius(), p.getMass(), p.getSpecies()));
+        }
+        long start = System.nanoTime();
+        CollisionSystemPriorityQueue system = new CollisionSystemPriorityQueue(particles, L, options);
+        for (int k = 0; k < events && system.nextStep() != null; k++) {
+        }
+        double seconds = (System.nanoTime() - start) / 1e9;
+        List<Double> state = new ArrayList<>(4 * particles.size());
+        for (Particle p : particles) {
+            state.add(p.getX());
+            state.add(p.getY());
+            state.add(p.getVx());
+            state.add(p.getVy());
+        }
+        return new Result(seconds, state);
+    }
+}
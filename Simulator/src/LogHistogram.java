@@ -0,0 +1,136 @@
+import java.util.Arrays;
+
+/**
+ * Fixed-size histogram with logarithmic bins: {@code binsPerDecade} bins per power of ten from
+ * 10^minExponent to 10^maxExponent. Values outside the range (including zero) go to the underflow/overflow
+ * counters, and the exact count, sum and sum of squares are kept apart so means do not depend on the binning.
+ * Two histograms with the same binning can be merged by adding their counts.
+ */
+public class LogHistogram {
+
+    private final int minExponent, maxExponent, binsPerDecade;
+    private final long[] counts;
+    private long underflow, overflow, count;
+    private double sum, sumSquares;
+
+    public LogHistogram(int minExponent, int maxExponent, int binsPerDecade) {
+        if (maxExponent <= minExponent || binsPerDecade <= 0) {
+            throw new IllegalArgumentException("Invalid binning 1e" + minExponent + "..1e" + maxExponent + " with " + binsPerDecade + " bins per decade");
+        }
+        this.minExponent = minExponent;
+        this.maxExponent = maxExponent;
+        this.binsPerDecade = binsPerDecade;
+        this.counts = new long[(maxExponent - minExponent) * binsPerDecade];
+    }
+
+    public void add(double value) {
+        count++;
+        sum += value;
+        sumSquares += value * value;
+        if (!(value > 0)) {
+            underflow++;
+            return;
+        }
+        double position = (Math.log10(value) - minExponent) * binsPerDecade;
+        if (position < 0) {
+            underflow++;
+        } else if (position >= counts.length) {
+            overflow++;
+        } else {
+            counts[(int) position]++;
+        }
+    }
+
+    public void merge(LogHistogram other) {
+        if (!sameBinning(other)) {
+            throw new IllegalArgumentException("Cannot merge histograms with different binning");
+        }
+        for (int i = 0; i < counts.length; i++) counts[i] += other.counts[i];
+        underflow += other.underflow;
+        overflow += other.overflow;
+        count += other.count;
+        sum += other.sum;
+        sumSquares += other.sumSquares;
+    }
+
+    public boolean sameBinning(LogHistogram other) {
+        return minExponent == other.minExponent && maxExponent == other.maxExponent && binsPerDecade == other.binsPerDecade;
+    }
+
+    public int getBins() {
+        return counts.length;
+    }
+
+    public double lowerBound(int bin) {
+        return Math.pow(10, minExponent + (double) bin / binsPerDecade);
+    }
+
+    public double upperBound(int bin) {
+        return lowerBound(bin + 1);
+    }
+
+    public long getCount(int bin) {
+        return counts[bin];
+    }
+
+    public long getCount() {
+        return count;
+    }
+
+    public long getUnderflow() {
+        return underflow;
+    }
+
+    public long getOverflow() {
+        return overflow;
+    }
+
+    public double getSum() {
+        return sum;
+    }
+
+    public double getSumSquares() {
+        return sumSquares;
+    }
+
+    public double mean() {
+        return count == 0 ? Double.NaN : sum / count;
+    }
+
+    public double variance() {
+        if (count < 2) return Double.NaN;
+        double mean = mean();
+        return Math.max(0.0, (sumSquares - count * mean * mean) / (count - 1));
+    }
+
+    public int getMinExponent() {
+        return minExponent;
+    }
+
+    public int getMaxExponent() {
+        return maxExponent;
+    }
+
+    public int getBinsPerDecade() {
+        return binsPerDecade;
+    }
+
+    /** Restores the totals of a histogram that was written to a file; the bins are set with {@link #setCount}. */
+    void setTotals(long count, double sum, double sumSquares, long underflow, long overflow) {
+        this.count = count;
+        this.sum = sum;
+        this.sumSquares = sumSquares;
+        this.underflow = underflow;
+        this.overflow = overflow;
+    }
+
+    void setCount(int bin, long value) {
+        counts[bin] = value;
+    }
+
+    @Override
+    public String toString() {
+        return "LogHistogram{1e" + minExponent + "..1e" + maxExponent + ", count=" + count + ", mean=" + mean()
+                + ", bins=" + Arrays.toString(counts) + "}";
+    }
+}
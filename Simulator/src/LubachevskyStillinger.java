@@ -0,0 +1,202 @@
+import java.util.Locale;
+import java.util.PriorityQueue;
+import java.util.Random;
+
+/**
+ * Lubachevsky–Stillinger compression of the square board of the {@link Generator}: every radius is
+ * {@code sigma[i] * g(t)}, with g growing linearly from the scale the particles were placed at to 1, while the
+ * particles move and collide. Events are kept and invalidated like in {@link CollisionSystemPriorityQueue}
+ * (a priority queue, per-particle collision counts and every particle moved on each event), but contacts are
+ * predicted with the growing radii: a pair meets when |Δr + Δv t| = (σi + σj) g(t) and a wall when the edge,
+ * moving at v ± σ g', reaches it. Collisions reverse the approach speed relative to the growth of the contact,
+ * so the particles always separate faster than they grow and the configuration never overlaps.
+ * <p>
+ * Collisions with growing disks heat the gas, so speeds are rescaled to the rms {@code speed} every n events.
+ * Growth runs at {@code growthRate} rms speeds of the largest radius per unit speed, i.e. dσ_max/dt =
+ * growthRate · speed; slower compression gets closer to jamming. Above what the rate allows the collision rate
+ * diverges and {@link #compress} gives up after {@code maxEventsPerParticle} events per particle.
+ */
+public class LubachevskyStillinger {
+
+    // Margen relativo del último tamaño, para que los radios finales tengan holgura frente al redondeo
+    private static final double MARGIN = 1e-9;
+
+    private record Event(double time, int i, int j, int countI, int countJ) implements Comparable<Event> {
+        @Override
+        public int compareTo(Event o) {
+            return Double.compare(time, o.time);
+        }
+    }
+
+    private static final int LEFT = -1, RIGHT = -2, BOTTOM = -3, TOP = -4;
+
+    private final double board;
+    private final double[] x, y, vx, vy, sigma, mass;
+    private final int[] counts;
+    private final int n;
+    private final double speed;
+    private final double gamma;
+    private final PriorityQueue<Event> pq = new PriorityQueue<>();
+    private double time, g;
+    private long events;
+
+    /**
+     * Particles at (x, y) with target radii {@code sigma}, currently placed with radii {@code sigma * g0}.
+     * The arrays are updated in place.
+     */
+    public LubachevskyStillinger(double board, double[] x, double[] y, double[] vx, double[] vy, double[] sigma,
+                                 double[] mass, double g0, double speed, double growthRate) {
+        if (!(growthRate > 0) || !(speed > 0)) {
+            throw new IllegalArgumentException("Growth rate and speed should be positive: " + growthRate + ", " + speed);
+        }
+        this.board = board;
+        this.x = x;
+        this.y = y;
+        this.vx = vx;
+        this.vy = vy;
+        this.sigma = sigma;
+        this.mass = mass;
+        this.n = x.length;
+        this.counts = new int[n];
+        this.speed = speed;
+        double maxSigma = 0;
+        for (double s : sigma) maxSigma = Math.max(maxSigma, s);
+        this.gamma = growthRate * speed / maxSigma;
+        this.g = g0;
+    }
+
+    /** Grows the radii up to {@code sigma}; returns the number of events it took. */
+    public long compress(long maxEventsPerParticle) {
+        double stop = (1 + MARGIN - g) / gamma;
+        for (int i = 0; i < n; i++) predict(i, i);
+        while (true) {
+            Event e = pq.poll();
+            if (e == null || e.time() >= stop) {
+                advance(stop);
+                return events;
+            }
+            if (counts[e.i()] != e.countI() || (e.j() >= 0 && counts[e.j()] != e.countJ())) continue;
+            advance(e.time());
+            resolve(e);
+            counts[e.i()]++;
+            predict(e.i(), -1);
+            if (e.j() >= 0) {
+                counts[e.j()]++;
+                predict(e.j(), e.i());
+            }
+            if (++events % n == 0) rescale();
+            if (events > maxEventsPerParticle * n) {
+                throw new IllegalStateException(String.format(Locale.US,
+                        "Compression jammed at %.1f%% of the target radii after %d events, use a lower --growth-rate or packing, or more --compress-events",
+                        100 * g, events));
+            }
+        }
+    }
+
+    private void advance(double t) {
+        double dt = t - time;
+        for (int i = 0; i < n; i++) {
+            x[i] += vx[i] * dt;
+            y[i] += vy[i] * dt;
+        }
+        g += gamma * dt;
+        time = t;
+    }
+
+    /** Predicts the events of particle {@code i}; pairs with index below {@code skip} were predicted by the other particle. */
+    private void predict(int i, int skip) {
+        double r = sigma[i] * g, growth = sigma[i] * gamma;
+        wall(i, LEFT, vx[i] < growth ? (x[i] - r) / (growth - vx[i]) : Double.NaN);
+        wall(i, RIGHT, vx[i] > -growth ? (board - r - x[i]) / (vx[i] + growth) : Double.NaN);
+        wall(i, BOTTOM, vy[i] < growth ? (y[i] - r) / (growth - vy[i]) : Double.NaN);
+        wall(i, TOP, vy[i] > -growth ? (board - r - y[i]) / (vy[i] + growth) : Double.NaN);
+        for (int j = 0; j < n; j++) {
+            if (j == i || (skip == i && j < i) || j == skip) continue;
+            double t = pairTime(i, j);
+            if (t < Particle.NO_HIT_TIME) pq.add(new Event(time + t, i, j, counts[i], counts[j]));
+        }
+    }
+
+    private void wall(int i, int wall, double t) {
+        if (Double.isNaN(t)) return;
+        pq.add(new Event(time + Math.max(0, t), i, wall, counts[i], 0));
+    }
+
+    private double pairTime(int i, int j) {
+        double dx = x[j] - x[i], dy = y[j] - y[i];
+        double dvx = vx[j] - vx[i], dvy = vy[j] - vy[i];
+        double R = sigma[i] + sigma[j];
+        double a = dvx * dvx + dvy * dvy - R * R * gamma * gamma;
+        double b = dx * dvx + dy * dvy - R * R * g * gamma;
+        double c = dx * dx + dy * dy - R * R * g * g;
+        // Tocándose por redondeo y acercándose más rápido de lo que crece el contacto
+        if (c <= 0) return b < 0 ? 0 : Particle.NO_HIT_TIME;
+        if (b >= 0 && a >= 0) return Particle.NO_HIT_TIME;
+        double disc = b * b - a * c;
+        if (disc < 0) return Particle.NO_HIT_TIME;
+        // Raíz menor de a t² + 2 b t + c, escrita sin cancelación
+        return c / (-b + Math.sqrt(disc));
+    }
+
+    private void resolve(Event e) {
+        int i = e.i();
+        double growth = sigma[i] * gamma;
+        switch (e.j()) {
+            case LEFT -> vx[i] = -vx[i] + 2 * growth;
+            case RIGHT -> vx[i] = -vx[i] - 2 * growth;
+            case BOTTOM -> vy[i] = -vy[i] + 2 * growth;
+            case TOP -> vy[i] = -vy[i] - 2 * growth;
+            default -> {
+                int j = e.j();
+                double dx = x[j] - x[i], dy = y[j] - y[i];
+                double d = Math.sqrt(dx * dx + dy * dy);
+                double nx = dx / d, ny = dy / d;
+                double u = (vx[j] - vx[i]) * nx + (vy[j] - vy[i]) * ny;
+                double w = (sigma[i] + sigma[j]) * gamma;
+                double impulse = 2 * mass[i] * mass[j] / (mass[i] + mass[j]) * (w - u);
+                vx[i] -= impulse / mass[i] * nx;
+                vy[i] -= impulse / mass[i] * ny;
+                vx[j] += impulse / mass[j] * nx;
+                vy[j] += impulse / mass[j] * ny;
+            }
+        }
+    }
+
+    /** Brings the rms speed back to {@code speed}; every prediction changes, so they are all made again. */
+    private void rescale() {
+        double sum = 0;
+        for (int i = 0; i < n; i++) sum += vx[i] * vx[i] + vy[i] * vy[i];
+        double factor = speed / Math.sqrt(sum / n);
+        for (int i = 0; i < n; i++) {
+            vx[i] *= factor;
+            vy[i] *= factor;
+            counts[i]++;
+        }
+        pq.clear();
+        for (int i = 0; i < n; i++) predict(i, i);
+    }
+
+    /** Gives every particle the generator's speed in a random direction, as the random insertion does. */
+    public void randomiseVelocities(Random random) {
+        for (int i = 0; i < n; i++) {
+            double angle = random.nextDouble() * 2 * Math.PI;
+            vx[i] = speed * Math.cos(angle);
+            vy[i] = speed * Math.sin(angle);
+        }
+    }
+
+    /** Smallest gap between disks of radii {@code sigma}, or between a disk and a wall, relative to its radius. */
+    public double minimumGap() {
+        double min = Double.POSITIVE_INFINITY;
+        for (int i = 0; i < n; i++) {
+            double s = sigma[i];
+            min = Math.min(min, Math.min(Math.min(x[i] - s, board - s - x[i]), Math.min(y[i] - s, board - s - y[i])) / s);
+            for (int j = i + 1; j < n; j++) {
+                double dx = x[j] - x[i], dy = y[j] - y[i];
+                double R = sigma[i] + sigma[j];
+                min = Math.min(min, (Math.sqrt(dx * dx + dy * dy) - R) / R);
+            }
+        }
+        return min;
+    }
+}
@@ -0,0 +1,76 @@
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Mean squared displacement from the first frame (--msd=&lt;events&gt;, a frame every 100 events by default),
+ * as Pythoner/DifusionCoefficient.py computes it from the trajectory: "time,msd" rows in output_*_msd.csv, with
+ * time relative to that frame. Runs on the async lane of the {@link ListenerPipeline}, on copied frames.
+ */
+public class MeanSquaredDisplacement implements AutoCloseable, SimulationListener {
+
+    public static final String FILE_SUFFIX = "_msd.csv";
+
+    private final BufferedWriter out;
+    private final int interval;
+    private double[] x0, y0;
+    private double t0;
+
+    public MeanSquaredDisplacement(Path path, SimulationOptions options) throws IOException {
+        String value = options.getString(SimulationOptions.MSD, "100");
+        this.interval = value.equals("true") ? 100 : Integer.parseInt(value);
+        if (interval <= 0) throw new IllegalArgumentException("MSD interval should be positive: " + interval);
+        this.out = Files.newBufferedWriter(path, StandardCharsets.UTF_8);
+        out.write("time,msd\n");
+    }
+
+    public static Path pathFor(Path outputPath) {
+        return OutputWriter.siblingPath(outputPath, FILE_SUFFIX);
+    }
+
+    @Override
+    public Lane lane() {
+        return Lane.ASYNC;
+    }
+
+    @Override
+    public int frameInterval() {
+        return interval;
+    }
+
+    @Override
+    public void onFrame(Frame frame) throws IOException {
+        List<Particle> particles = frame.particles();
+        int n = particles.size();
+        if (x0 == null) {
+            x0 = new double[n];
+            y0 = new double[n];
+            for (int i = 0; i < n; i++) {
+                x0[i] = particles.get(i).getX();
+                y0[i] = particles.get(i).getY();
+            }
+            t0 = frame.time();
+        }
+        double sum = 0;
+        for (int i = 0; i < n; i++) {
+            double dx = particles.get(i).getX() - x0[i];
+            double dy = particles.get(i).getY() - y0[i];
+            sum += dx * dx + dy * dy;
+        }
+        out.write(String.format(Locale.US, "%.6f,%.9e%n", frame.time() - t0, n == 0 ? 0.0 : sum / n));
+    }
+
+    @Override
+    public void onFinish(long step, double time) throws IOException {
+        out.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+        out.close();
+    }
+}
@@ -0,0 +1,52 @@
+import java.util.Arrays;
+
+/**
+ * Z-order (Morton) curve over a rectangle: positions are quantised to 15 bits per axis and their bits
+ * interleaved, so indexes that are close on the curve are close in space. {@link #order} sorts particle
+ * indexes along it, which keeps spatial neighbours close in the engine's arrays.
+ */
+public class MortonOrder {
+
+    private static final int BITS = 15;
+    private static final double CELLS = 1 << BITS;
+
+    private MortonOrder() {
+    }
+
+    /** Morton key of (x, y) in [x0, x0 + width] x [y0, y0 + height]; points outside are clamped to the border. */
+    public static long key(double x, double y, double x0, double y0, double width, double height) {
+        return spread(quantise((x - x0) / width)) | (spread(quantise((y - y0) / height)) << 1);
+    }
+
+    /**
+     * Indexes 0..n-1 sorted along the curve: {@code order[k]} is the index that goes to position k.
+     * Ties keep the previous order, so sorting twice without moving does not shuffle anything.
+     */
+    public static int[] order(double[] xs, double[] ys, int n, double x0, double y0, double width, double height) {
+        // Clave (30 bits) arriba e índice en los 32 bits bajos: un solo sort de primitivos, siempre positivos
+        long[] packed = new long[n];
+        for (int i = 0; i < n; i++) {
+            packed[i] = (key(xs[i], ys[i], x0, y0, width, height) << 32) | i;
+        }
+        Arrays.sort(packed);
+        int[] order = new int[n];
+        for (int k = 0; k < n; k++) {
+            order[k] = (int) packed[k];
+        }
+        return order;
+    }
+
+    private static long quantise(double fraction) {
+        long cell = (long) (fraction * CELLS);
+        return Math.max(0, Math.min((long) CELLS - 1, cell));
+    }
+
+    /** Spreads the low 16 bits of {@code v} to the even bits. */
+    private static long spread(long v) {
+        v = (v | (v << 8)) & 0x00FF00FFL;
+        v = (v | (v << 4)) & 0x0F0F0F0FL;
+        v = (v | (v << 2)) & 0x33333333L;
+        v = (v | (v << 1)) & 0x55555555L;
+        return v;
+    }
+}
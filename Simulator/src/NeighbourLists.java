@@ -0,0 +1,159 @@
+import java.util.Arrays;
+
+/**
+ * Neighbour lists for event-driven prediction (Donev, Torquato &amp; Stillinger, J. Comput. Phys. 202, 2005).
+ * <p>
+ * Each particle is bound to a neighbourhood: a disk of radius {@code skin / 2} around the position it had
+ * when its list was last rebuilt (its centre). While it stays inside, two particles can only collide if their
+ * centres are closer than {@code r1 + r2 + skin}, so predictions only need to look at that list.
+ * {@link #timeToLeave} gives the time of the {@link NeighbourRebuild} event that refreshes it.
+ * The lists are symmetric and the centres are kept in a {@link HierarchicalGrid} to rebuild in O(1) average
+ * time, also for mixtures with very different radii.
+ */
+public class NeighbourLists {
+
+    private static final int INITIAL_CAPACITY = 8;
+
+    private final double skin;
+    private final double[] xs, ys, radii;
+    private final double[] cx, cy;
+    private final int[][] lists;
+    private final int[] sizes;
+    private final Enclosure enclosure;
+    private HierarchicalGrid grid;
+
+    public NeighbourLists(double skin, double[] xs, double[] ys, double[] radii, Enclosure enclosure) {
+        if (skin <= 0) throw new IllegalArgumentException("Skin should be positive: " + skin);
+        this.skin = skin;
+        this.xs = xs;
+        this.ys = ys;
+        this.radii = radii;
+        int n = xs.length;
+        this.cx = new double[n];
+        this.cy = new double[n];
+        this.lists = new int[n][INITIAL_CAPACITY];
+        this.sizes = new int[n];
+        this.enclosure = enclosure;
+        for (int i = 0; i < n; i++) {
+            cx[i] = xs[i];
+            cy[i] = ys[i];
+        }
+        fillGrid();
+        for (int i = 0; i < n; i++) {
+            final int self = i;
+            grid.forEachNear(cx[i], cy[i], radii[i], skin, j -> {
+                if (j > self && overlap(self, j)) link(self, j);
+            });
+        }
+    }
+
+    public double getSkin() {
+        return skin;
+    }
+
+    public int size(int i) {
+        return sizes[i];
+    }
+
+    /** Neighbour indexes of {@code i}; only the first {@link #size(int)} entries are meaningful. */
+    public int[] neighbours(int i) {
+        return lists[i];
+    }
+
+    public double centreX(int i) {
+        return cx[i];
+    }
+
+    public double centreY(int i) {
+        return cy[i];
+    }
+
+    /** Moves the neighbourhood of {@code i} to its current position and recomputes its list. */
+    public void rebuild(int i) {
+        for (int k = 0; k < sizes[i]; k++) {
+            unlink(lists[i][k], i);
+        }
+        sizes[i] = 0;
+        cx[i] = xs[i];
+        cy[i] = ys[i];
+        grid.move(i, cx[i], cy[i]);
+        grid.forEachNear(cx[i], cy[i], radii[i], skin, j -> {
+            if (j != i && overlap(i, j)) link(i, j);
+        });
+    }
+
+    /**
+     * Follows a permutation of the particle arrays, already applied to xs, ys and radii: {@code order[k]} is the
+     * old index of the particle now at k. Centres and lists move with their particles, so pending
+     * {@link NeighbourRebuild} events stay valid.
+     */
+    public void permute(int[] order) {
+        int n = order.length;
+        int[] newIndex = new int[n];
+        for (int k = 0; k < n; k++) newIndex[order[k]] = k;
+        double[] oldCx = cx.clone(), oldCy = cy.clone();
+        int[][] oldLists = lists.clone();
+        int[] oldSizes = sizes.clone();
+        for (int k = 0; k < n; k++) {
+            int old = order[k];
+            cx[k] = oldCx[old];
+            cy[k] = oldCy[old];
+            lists[k] = oldLists[old];
+            sizes[k] = oldSizes[old];
+            for (int m = 0; m < sizes[k]; m++) lists[k][m] = newIndex[lists[k][m]];
+        }
+        fillGrid();
+    }
+
+    private void fillGrid() {
+        grid = new HierarchicalGrid(enclosure.getMinX(), enclosure.getMinY(),
+                enclosure.getMaxX() - enclosure.getMinX(), enclosure.getMaxY() - enclosure.getMinY(),
+                radii, skin);
+        for (int i = 0; i < cx.length; i++) grid.insert(i, cx[i], cy[i]);
+    }
+
+    /**
+     * Time until the particle, moving from (x, y) with velocity (vx, vy), is {@code skin / 2} away from
+     * its centre. Zero if it is already outside, {@link Particle#NO_HIT_TIME} if it does not move.
+     */
+    public double timeToLeave(int i, double x, double y, double vx, double vy) {
+        double half = skin / 2;
+        double dx = x - cx[i];
+        double dy = y - cy[i];
+        double c = dx * dx + dy * dy - half * half;
+        if (c >= 0) return 0.0;
+        double a = vx * vx + vy * vy;
+        if (a == 0) return Particle.NO_HIT_TIME;
+        double b = dx * vx + dy * vy;
+        return (-b + Math.sqrt(b * b - a * c)) / a;
+    }
+
+    private boolean overlap(int i, int j) {
+        double dx = cx[j] - cx[i];
+        double dy = cy[j] - cy[i];
+        double d = radii[i] + radii[j] + skin;
+        return dx * dx + dy * dy < d * d;
+    }
+
+    private void link(int i, int j) {
+        append(i, j);
+        append(j, i);
+    }
+
+    private void append(int i, int j) {
+        if (sizes[i] == lists[i].length) {
+            lists[i] = Arrays.copyOf(lists[i], lists[i].length * 2);
+        }
+        lists[i][sizes[i]++] = j;
+    }
+
+    private void unlink(int i, int j) {
+        int[] list = lists[i];
+        for (int k = 0; k < sizes[i]; k++) {
+            if (list[k] == j) {
+                list[k] = list[--sizes[i]];
+                return;
+            }
+        }
+    }
+}
@@ -0,0 +1,28 @@
+/**
+ * Scheduled when a particle reaches the border of its neighbourhood (see {@link NeighbourLists}).
+ * It does not change any velocity, the engine rebuilds the particle's list and predicts it again.
+ */
+public class NeighbourRebuild extends Collision {
+
+    public NeighbourRebuild(Particle p1, double time) {
+        super(p1, time);
+    }
+
+    @Override
+    protected int typeOrder() {
+        return 0;
+    }
+
+    @Override
+    public WallCollisionDTO resolve() {
+        return null;
+    }
+
+    @Override
+    public String toString() {
+        return "NeighbourRebuild{" +
+                "p1=" + getP1().getId() +
+                ", time=" + getTime() +
+                "}";
+    }
+}
@@ -1,66 +1,163 @@
-import java.io.BufferedWriter;
 import java.io.IOException;
-import java.nio.charset.StandardCharsets;
-import java.nio.file.Files;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
 import java.nio.file.Path;
 import java.nio.file.StandardOpenOption;
-import java.util.Formatter;
 import java.util.List;
-import java.util.Locale;
-
-public class OutputWriter implements AutoCloseable {
-
-    private final BufferedWriter bw;
-    private final BufferedWriter collisionsBw;
-    private final StringBuilder sb;
-    private final Formatter fmt;
-
-    private OutputWriter(Path path) throws IOException {
-        this.bw = Files.newBufferedWriter(
-                path,
-                StandardCharsets.UTF_8,
-                StandardOpenOption.CREATE,
-                StandardOpenOption.TRUNCATE_EXISTING,
-                StandardOpenOption.WRITE
-        );
-        String baseName = path.getFileName().toString();
-        String collisionsName = baseName.substring(0, baseName.length() - 4) + "_collisions.csv";
-        Path collisionsPath = path.resolveSibling(collisionsName);
-        this.collisionsBw = Files.newBufferedWriter(
-                collisionsPath,
-                StandardCharsets.UTF_8,
-                StandardOpenOption.CREATE,
-                StandardOpenOption.TRUNCATE_EXISTING,
-                StandardOpenOption.WRITE
-        );
-        this.sb  = new StringBuilder();
-        this.fmt = new Formatter(sb, Locale.US);
+
+/**
+ * Writes every frame ("%.4f" time line and one "%.17g,%.17g,%.17g,%.17g,%.5f" row per particle) and the
+ * wall collisions ("%.4f,%d,%.17g") of a run. The text goes through {@link CsvFormatter}, which writes the same
+ * bytes as {@link java.util.Formatter} without allocating per value.
+ * <p>
+ * With a keyframe interval above 1 only the frames of every n-th event are written, while every wall collision
+ * still is; {@link TrajectoryFilter} writes the particles in between that are being analysed.
+ */
+public class OutputWriter implements AutoCloseable, SimulationListener {
+
+    private final CsvFormatter csv;
+    private final CsvFormatter collisionsCsv;
+    private final boolean mixture;
+    private final List<Species> species;
+    // Solo con salida binaria (csv queda en null)
+    private final FileChannel frames;
+    private ByteBuffer frameBuffer;
+    private int keyframeInterval = 1;
+
+    private OutputWriter(Path path, List<Species> species, boolean binary) throws IOException {
+        if (binary) {
+            this.csv = null;
+            this.frames = FileChannel.open(
+                    framesPath(path, true),
+                    StandardOpenOption.CREATE,
+                    StandardOpenOption.TRUNCATE_EXISTING,
+                    StandardOpenOption.WRITE
+            );
+        } else {
+            this.frames = null;
+            this.csv = new CsvFormatter(path);
+        }
+        this.collisionsCsv = new CsvFormatter(collisionsPath(path));
+        this.mixture = !species.isEmpty();
+        this.species = species;
+        if (csv != null) {
+            for (Species s : species) {
+                csv.text("#species,").integer(s.id()).comma().general17(s.radius()).comma().general17(s.mass()).newLine();
+            }
+        }
+    }
+
+    /** File the frames of output {@code path} are written to: {@code path} itself, or the .bin next to it. */
+    public static Path framesPath(Path path, boolean binary) {
+        return binary ? siblingPath(path, BinaryParticleFormat.EXTENSION) : path;
+    }
+
+    /** Wall collisions of output {@code path}, given as the .csv or as the .bin frames file. */
+    public static Path collisionsPath(Path path) {
+        return siblingPath(path, "_collisions.csv");
+    }
+
+    /**
+     * File next to output {@code path} (.csv, or the .bin frames) named like it with the extension replaced by
+     * {@code suffix}, e.g. "_stats.csv"; every file of a run is named this way.
+     */
+    public static Path siblingPath(Path path, String suffix) {
+        String name = path.getFileName().toString();
+        return path.resolveSibling(name.substring(0, name.length() - 4) + suffix);
     }
 
     public static OutputWriter open(Path path) throws IOException {
-        return new OutputWriter(path);
+        return new OutputWriter(path, List.of(), false);
+    }
+
+    /**
+     * For mixtures the file starts with one "#species,id,radius,mass" line per species and the last
+     * column of each particle row is its species id instead of the radius.
+     */
+    public static OutputWriter open(Path path, List<Species> species) throws IOException {
+        return new OutputWriter(path, species, false);
+    }
+
+    /**
+     * With {@code binary} the frames go to a {@link BinaryParticleFormat} trajectory next to {@code path}
+     * (same name with the .bin extension); the collisions are still written as CSV.
+     */
+    public static OutputWriter open(Path path, List<Species> species, boolean binary) throws IOException {
+        return new OutputWriter(path, species, binary);
+    }
+
+    /** Writes the particles only on frames whose step is a multiple of {@code interval}. */
+    public OutputWriter keyframes(int interval) {
+        if (interval <= 0) throw new IllegalArgumentException("Keyframe interval should be positive: " + interval);
+        this.keyframeInterval = interval;
+        return this;
     }
 
+    @Override
+    public void onFrame(Frame frame) throws IOException {
+        if (frame.step() % keyframeInterval == 0) {
+            writeStep(frame.particles(), frame.time(), frame.wall());
+        } else {
+            writeCollision(frame.wall());
+        }
+    }
 
     public void writeStep(List<Particle> particles, double time, WallCollisionDTO collision) throws IOException {
-        sb.setLength(0);
-        fmt.format("%.4f%n", time);
-        for (Particle p : particles) {
-            fmt.format("%.17g,%.17g,%.17g,%.17g,%.5f%n", p.getX(), p.getY(), p.getVx(), p.getVy(), p.getRadius());
+        if (frames != null) {
+            writeBinaryStep(particles, time);
+        } else {
+            writeTextStep(particles, time);
         }
-        bw.write(sb.toString());
+        writeCollision(collision);
+    }
+
+    private void writeCollision(WallCollisionDTO collision) throws IOException {
         if (collision != null) {
             if (collision.wall() == Wall.CORNER) return;
-            sb.setLength(0);
-            fmt.format("%.4f,%d,%.17g%n", collision.time(), collision.wall().ordinal(), collision.normalSpeedAbs());
-            collisionsBw.write(sb.toString());
+            collisionsCsv.fixed(collision.time(), 4).comma().integer(collision.wall().ordinal()).comma()
+                    .general17(collision.normalSpeedAbs()).newLine();
+            collisionsCsv.flushIfFull();
+        }
+    }
+
+    private void writeBinaryStep(List<Particle> particles, double time) throws IOException {
+        if (frameBuffer == null) {
+            ByteBuffer header = BinaryParticleFormat.trajectoryHeader(particles.size(), species);
+            while (header.hasRemaining()) frames.write(header);
+            frameBuffer = ByteBuffer.allocateDirect(BinaryParticleFormat.frameBytes(particles.size()))
+                    .order(ByteOrder.LITTLE_ENDIAN);
+        }
+        frameBuffer.clear();
+        frameBuffer.putDouble(time);
+        for (Particle p : particles) {
+            frameBuffer.putDouble(p.getX()).putDouble(p.getY())
+                    .putDouble(p.getVx()).putDouble(p.getVy())
+                    .putDouble(mixture ? p.getSpecies() : p.getRadius());
+        }
+        frameBuffer.flip();
+        while (frameBuffer.hasRemaining()) frames.write(frameBuffer);
+    }
+
+    private void writeTextStep(List<Particle> particles, double time) throws IOException {
+        csv.fixed(time, 4).newLine();
+        for (Particle p : particles) {
+            csv.general17(p.getX()).comma().general17(p.getY()).comma()
+                    .general17(p.getVx()).comma().general17(p.getVy()).comma();
+            if (mixture) {
+                csv.integer(p.getSpecies());
+            } else {
+                csv.fixed(p.getRadius(), 5);
+            }
+            csv.newLine();
+            csv.flushIfFull();
         }
     }
 
     @Override
     public void close() throws IOException {
-        fmt.close();
-        bw.close();
-        collisionsBw.close();
+        if (csv != null) csv.close();
+        if (frames != null) frames.close();
+        collisionsCsv.close();
     }
 }
\ No newline at end of file
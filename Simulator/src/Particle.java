@@ -1,15 +1,30 @@
+import java.util.concurrent.atomic.AtomicLong;
+
 public class Particle {
 
     public static double NO_HIT_TIME = Double.POSITIVE_INFINITY;
 
-    private static long nextId = 0;
+    // Atómico porque SweepOrchestrator crea partículas desde varios hilos
+    private static final AtomicLong nextId = new AtomicLong();
     private final long ID;
 
     private double x, y, vx, vy, radius, mass;
+    private final int species;
     private int collisionCount;
+    // Posición en los arrays del motor que la simula, -1 fuera de uno
+    private int slot = -1;
 
-    public Particle(double x, double y, double vx, double vy, double radius, double mass) {
-        this.ID = nextId++;
+    public Particle(double x, double y, double vx, double vy, double radius, double mass, int species) {
+        this(nextId.getAndIncrement(), x, y, vx, vy, radius, mass, species);
+    }
+
+    /**
+     * With an explicit id, for callers that number the particles of each run on their own (see {@link InputParser}).
+     * Ids only need to be unique within the particles of one simulation.
+     */
+    public Particle(long id, double x, double y, double vx, double vy, double radius, double mass, int species) {
+        this.ID = id;
+        this.species = species;
         this.x = x;
         this.y = y;
         this.vx = vx;
@@ -19,10 +34,18 @@ public class Particle {
         this.collisionCount = 0;
     }
 
+    public Particle(double x, double y, double vx, double vy, double radius, double mass) {
+        this(x, y, vx, vy, radius, mass, 0);
+    }
+
     public Particle(double x, double y, double vx, double vy, double radius) {
         this(x, y, vx, vy, radius, 1.0);
     }
 
+    public Particle(double x, double y, double vx, double vy, Species species) {
+        this(x, y, vx, vy, species.radius(), species.mass(), species.id());
+    }
+
     public Double timeToHit(Particle other) {
         double dx = other.getX() - getX();
         double dy = other.getY() - getY();
@@ -143,6 +166,15 @@ public class Particle {
 
     public long getId()  { return ID; }
 
+    /** Index of the particle in the primitive arrays of its {@link CollisionSystemPriorityQueue}. */
+    int getSlot() { return slot; }
+
+    void setSlot(int slot) { this.slot = slot; }
+
+    public int getSpecies() {
+        return species;
+    }
+
     @Override
     public boolean equals(Object o) {
         if (this == o) return true;
@@ -157,7 +189,7 @@ public class Particle {
 
     @Override
     public String toString() {
-        return "Particle: " + ID + ", x,y = (" + x + ", " + y + "), v = (" + vx + ", " + vy + "), radius = " + radius + ", mass = " + mass;
+        return "Particle: " + ID + ", x,y = (" + x + ", " + y + "), v = (" + vx + ", " + vy + "), radius = " + radius + ", mass = " + mass + ", species = " + species;
     }
 
     public double time_x(double x) {
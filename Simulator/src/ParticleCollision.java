@@ -3,7 +3,7 @@ public class ParticleCollision extends Collision {
     private final Particle p2;
     private final int count2;
 
-    public ParticleCollision(Particle p1, Particle p2, Double time) {
+    public ParticleCollision(Particle p1, Particle p2, double time) {
         super(p1, time);
         if (p2 == null) {
             throw new IllegalArgumentException("Second particle cannot be null in ParticleCollision");
@@ -22,6 +22,21 @@ public class ParticleCollision extends Collision {
         return super.isValid() && p2.getCollisionCount() == count2;
     }
 
+    @Override
+    protected int typeOrder() {
+        return 2;
+    }
+
+    @Override
+    protected long secondKey() {
+        return p2.getId();
+    }
+
+    @Override
+    protected int secondCount() {
+        return count2;
+    }
+
     @Override
     public WallCollisionDTO resolve() {
         getP1().bounceOff(p2);
@@ -0,0 +1,114 @@
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Rolling hash of the particle states written every {@code interval} events (--deterministic), as
+ * "event,time,hash" lines in output_*_fingerprint.csv plus one last line at the end of the run.
+ * Each checkpoint folds the previous hash, the event number, the time and the exact bits of x, y, vx, vy of every
+ * particle, so two builds or two engines produced the same trajectory up to a checkpoint iff the hashes match.
+ * {@code java RunFingerprint a_fingerprint.csv b_fingerprint.csv} reports the first checkpoint where they differ.
+ */
+public class RunFingerprint implements AutoCloseable, SimulationListener {
+
+    public static final String FILE_SUFFIX = "_fingerprint.csv";
+
+    private final BufferedWriter out;
+    private final int interval;
+    private long hash = 0x84222325CBF29CE4L;
+    private long lastEvent = -1;
+    private List<Particle> particles;
+
+    public RunFingerprint(Path path, int interval) throws IOException {
+        if (interval <= 0) throw new IllegalArgumentException("Checkpoint interval should be positive: " + interval);
+        this.interval = interval;
+        this.out = Files.newBufferedWriter(path, StandardCharsets.UTF_8);
+        out.write("event,time,hash\n");
+    }
+
+    public static Path pathFor(Path outputPath) {
+        return OutputWriter.siblingPath(outputPath, FILE_SUFFIX);
+    }
+
+    @Override
+    public void onStart(Run run) {
+        particles = run.particles();
+    }
+
+    @Override
+    public boolean wantsEvents() {
+        return true;
+    }
+
+    @Override
+    public void onEvent(Event event) throws IOException {
+        event(event.step(), event.time(), particles);
+    }
+
+    @Override
+    public void onFinish(long step, double time) throws IOException {
+        finish(step, time, particles);
+    }
+
+    /** Called after every event; only writes on checkpoints. */
+    public void event(long event, double time, List<Particle> particles) throws IOException {
+        if (event % interval == 0) checkpoint(event, time, particles);
+    }
+
+    /** Final checkpoint, unless the last event already was one. */
+    public void finish(long event, double time, List<Particle> particles) throws IOException {
+        if (event != lastEvent) checkpoint(event, time, particles);
+    }
+
+    private void checkpoint(long event, double time, List<Particle> particles) throws IOException {
+        long h = mix(hash, event);
+        h = mix(h, Double.doubleToLongBits(time));
+        for (Particle p : particles) {
+            h = mix(h, Double.doubleToLongBits(p.getX()));
+            h = mix(h, Double.doubleToLongBits(p.getY()));
+            h = mix(h, Double.doubleToLongBits(p.getVx()));
+            h = mix(h, Double.doubleToLongBits(p.getVy()));
+        }
+        hash = h;
+        lastEvent = event;
+        out.write(String.format(Locale.US, "%d,%.17g,%016x%n", event, time, h));
+    }
+
+    private static long mix(long h, long value) {
+        value *= 0x9E3779B97F4A7C15L;
+        value ^= value >>> 32;
+        h = (h ^ value) * 0xBF58476D1CE4E5B9L;
+        return h ^ (h >>> 29);
+    }
+
+    @Override
+    public void close() throws IOException {
+        out.close();
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length != 2) {
+            System.out.println("Error: Parameters should be: fingerprintA fingerprintB");
+            return;
+        }
+        List<String> a = Files.readAllLines(Path.of(args[0]), StandardCharsets.UTF_8);
+        List<String> b = Files.readAllLines(Path.of(args[1]), StandardCharsets.UTF_8);
+        int common = Math.min(a.size(), b.size());
+        for (int i = 1; i < common; i++) {
+            if (!a.get(i).equals(b.get(i))) {
+                String last = i > 1 ? " after event " + a.get(i - 1).split(",")[0] : "";
+                System.out.println("Trajectories differ at checkpoint " + a.get(i) + " vs " + b.get(i) + last);
+                System.exit(1);
+            }
+        }
+        if (a.size() != b.size()) {
+            System.out.println("Same trajectory for " + (common - 1) + " checkpoints, but one run is longer");
+            System.exit(1);
+        }
+        System.out.println("Identical trajectories over " + (common - 1) + " checkpoints");
+    }
+}
@@ -0,0 +1,217 @@
+import java.io.IOException;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Current state of a running simulation in a memory-mapped file (--shared=&lt;path&gt;), rewritten every
+ * --shared-interval events (100 by default), so other processes can map it and read it without the simulator
+ * writing any output. Everything is little-endian:
+ * <pre>
+ *   0   "SIMSTATE"        8 bytes
+ *   8   layout version    int32 (1)
+ *   12  n                 int32
+ *   16  sequence          int64, odd while a snapshot is being written
+ *   24  event             int64
+ *   32  time              float64
+ *   40  left, right       int32, particles in each chamber
+ *   48  kinetic energy    float64
+ *   56  left, right wall impulse  float64, cumulative Σ 2|v_n| per chamber (pressure per unit mass over a
+ *                                 window is its difference over time × wall length, as in {@link LiveStream})
+ *   72  wall hits         int64
+ *   80  finished          int32
+ *   84  header size       int32 (128)
+ *   128 x[n], y[n], vx[n], vy[n], radius[n]   float64, particles in input order
+ * </pre>
+ * The sequence is a seqlock: a reader takes it, copies what it needs and takes it again, and the copy is
+ * consistent if both are equal and even. {@link #read} does that for other JVMs; with numpy, map the header
+ * and {@code np.memmap(path, '<f8', 'r', 128, (5, n))} and copy between two reads of the sequence.
+ * The file is left in place at the end with finished set.
+ * <p>
+ * The FFM {@code MemorySegment} API is still an incubator module in the JDK this project builds with, so the
+ * mapping is a {@link MappedByteBuffer} and the sequence goes through a byte-buffer {@link VarHandle} for the
+ * release/acquire ordering; the layout is the same a segment would map.
+ */
+public class SharedState implements AutoCloseable, SimulationListener {
+
+    public static final int VERSION = 1;
+    public static final int HEADER_BYTES = 128;
+    public static final int ARRAYS = 5;
+    /** How long {@link #read} retries before giving up on a snapshot. */
+    public static final long READ_TIMEOUT_MILLIS = 1000;
+
+    private static final byte[] MAGIC = "SIMSTATE".getBytes(StandardCharsets.US_ASCII);
+    private static final VarHandle LONGS = MethodHandles.byteBufferViewVarHandle(long[].class, ByteOrder.LITTLE_ENDIAN);
+    private static final int SEQUENCE = 16, EVENT = 24, TIME = 32, LEFT = 40, RIGHT = 44, ENERGY = 48,
+            LEFT_IMPULSE = 56, RIGHT_IMPULSE = 64, WALL_HITS = 72, FINISHED = 80, HEADER_SIZE = 84;
+
+    /** Consistent copy of the shared state. Arrays are in input order. */
+    public record Snapshot(long sequence, long event, double time, int left, int right, double kineticEnergy,
+                           double leftImpulse, double rightImpulse, long wallHits, boolean finished,
+                           double[] x, double[] y, double[] vx, double[] vy, double[] radius) {
+    }
+
+    private final FileChannel channel;
+    private final MappedByteBuffer buffer;
+    private final List<Particle> particles;
+    private final int interval;
+    private final double middle;
+    private long sequence;
+    private double leftImpulse, rightImpulse;
+    private long wallHits;
+
+    public SharedState(Path path, List<Particle> particles, double L, SimulationOptions options) throws IOException {
+        this.interval = options.getInt("shared-interval", 100);
+        if (interval <= 0) throw new IllegalArgumentException("Shared interval should be positive: " + interval);
+        this.particles = particles;
+        Enclosure enclosure = new Enclosure(0.0, 0.0, L);
+        this.middle = enclosure.getMinX() + enclosure.getWidth();
+        int n = particles.size();
+        channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING);
+        buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, HEADER_BYTES + (long) ARRAYS * n * Double.BYTES);
+        buffer.order(ByteOrder.LITTLE_ENDIAN);
+        buffer.put(0, MAGIC);
+        buffer.putInt(8, VERSION);
+        buffer.putInt(12, n);
+        buffer.putInt(HEADER_SIZE, HEADER_BYTES);
+        publish(0, 0.0, false);
+    }
+
+    @Override
+    public void onFrame(Frame frame) {
+        event(frame.step(), frame.time(), frame.wall());
+    }
+
+    @Override
+    public void onFinish(long step, double time) {
+        finish(step, time);
+    }
+
+    /** Called once per processed event with its wall collision, if any; publishes every {@code interval} events. */
+    public void event(long event, double time, WallCollisionDTO wall) {
+        if (wall != null && wall.wall() != Wall.CORNER) {
+            wallHits++;
+            if (wall.wall().ordinal() <= Wall.RIGHT_1.ordinal()) {
+                leftImpulse += 2 * wall.normalSpeedAbs();
+            } else {
+                rightImpulse += 2 * wall.normalSpeedAbs();
+            }
+        }
+        if (event % interval == 0) publish(event, time, false);
+    }
+
+    public void finish(long event, double time) {
+        publish(event, time, true);
+    }
+
+    private void publish(long event, double time, boolean finished) {
+        // Impar mientras se escribe; el fence evita que los datos se adelanten a esa marca
+        LONGS.setOpaque(buffer, SEQUENCE, ++sequence * 2 - 1);
+        VarHandle.storeStoreFence();
+        int n = particles.size();
+        int right = 0;
+        double energy = 0;
+        for (int i = 0; i < n; i++) {
+            Particle p = particles.get(i);
+            if (p.getX() > middle) right++;
+            energy += 0.5 * p.getMass() * (p.getVx() * p.getVx() + p.getVy() * p.getVy());
+            buffer.putDouble(offset(0, n, i), p.getX());
+            buffer.putDouble(offset(1, n, i), p.getY());
+            buffer.putDouble(offset(2, n, i), p.getVx());
+            buffer.putDouble(offset(3, n, i), p.getVy());
+            buffer.putDouble(offset(4, n, i), p.getRadius());
+        }
+        buffer.putLong(EVENT, event);
+        buffer.putDouble(TIME, time);
+        buffer.putInt(LEFT, n - right);
+        buffer.putInt(RIGHT, right);
+        buffer.putDouble(ENERGY, energy);
+        buffer.putDouble(LEFT_IMPULSE, leftImpulse);
+        buffer.putDouble(RIGHT_IMPULSE, rightImpulse);
+        buffer.putLong(WALL_HITS, wallHits);
+        buffer.putInt(FINISHED, finished ? 1 : 0);
+        LONGS.setRelease(buffer, SEQUENCE, sequence * 2);
+    }
+
+    private static int offset(int array, int n, int i) {
+        return HEADER_BYTES + (array * n + i) * Double.BYTES;
+    }
+
+    /**
+     * Maps {@code path} read-only and returns a consistent snapshot, retrying while the simulator is writing.
+     * Returns null if the file is not a shared state, and throws if no consistent copy could be taken within
+     * {@link #READ_TIMEOUT_MILLIS} (a simulator that died in the middle of a write leaves the sequence odd).
+     */
+    public static Snapshot read(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            if (channel.size() < HEADER_BYTES) return null;
+            ByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()).order(ByteOrder.LITTLE_ENDIAN);
+            byte[] magic = new byte[MAGIC.length];
+            buffer.get(0, magic);
+            if (!Arrays.equals(magic, MAGIC) || buffer.getInt(8) != VERSION) return null;
+            int n = buffer.getInt(12);
+            int header = buffer.getInt(HEADER_SIZE);
+            double[][] arrays = new double[ARRAYS][n];
+            long deadline = System.nanoTime() + READ_TIMEOUT_MILLIS * 1_000_000;
+            while (true) {
+                long before = (long) LONGS.getAcquire(buffer, SEQUENCE);
+                if (System.nanoTime() - deadline > 0) {
+                    throw new IOException("No consistent snapshot of " + path + " in " + READ_TIMEOUT_MILLIS
+                            + " ms (sequence " + before + ")");
+                }
+                if ((before & 1) != 0) {
+                    Thread.onSpinWait();
+                    continue;
+                }
+                for (int a = 0; a < ARRAYS; a++) {
+                    for (int i = 0; i < n; i++) {
+                        arrays[a][i] = buffer.getDouble(header + (a * n + i) * Double.BYTES);
+                    }
+                }
+                Snapshot s = new Snapshot(before / 2, buffer.getLong(EVENT), buffer.getDouble(TIME), buffer.getInt(LEFT),
+                        buffer.getInt(RIGHT), buffer.getDouble(ENERGY), buffer.getDouble(LEFT_IMPULSE),
+                        buffer.getDouble(RIGHT_IMPULSE), buffer.getLong(WALL_HITS), buffer.getInt(FINISHED) != 0,
+                        arrays[0], arrays[1], arrays[2], arrays[3], arrays[4]);
+                VarHandle.loadLoadFence();
+                if ((long) LONGS.getOpaque(buffer, SEQUENCE) == before) return s;
+            }
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        buffer.force();
+        channel.close();
+    }
+
+    /**
+     * Follows a shared state file from another process and prints one line per new snapshot until the run
+     * finishes: {@code java SharedState <path> [--poll=<ms>]}.
+     */
+    public static void main(String[] args) throws IOException, InterruptedException {
+        Path path = Path.of(args[0]);
+        long poll = SimulationOptions.parse(args, 1).getInt("poll", 100);
+        long seen = -1;
+        System.out.println("sequence,event,time,left,right,kinetic_energy,wall_hits");
+        while (true) {
+            Snapshot s = read(path);
+            if (s != null && s.sequence() != seen) {
+                seen = s.sequence();
+                System.out.printf(Locale.US, "%d,%d,%.6f,%d,%d,%.9e,%d%n", s.sequence(), s.event(), s.time(), s.left(),
+                        s.right(), s.kineticEnergy(), s.wallHits());
+                if (s.finished()) return;
+            }
+            Thread.sleep(poll);
+        }
+    }
+}
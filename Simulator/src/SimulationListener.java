@@ -0,0 +1,76 @@
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * Stage of the event loop of {@link Simulator}, added to a {@link ListenerPipeline}. All hooks are optional.
+ * <p>
+ * {@link Lane#INLINE} stages run on the simulation thread between events and see the live particles, so they
+ * must be cheap. {@link Lane#ASYNC} stages run on the pipeline's own thread, which gets the records in batches;
+ * their frames hold copies of the particles and they must not touch {@link Run#particles()} or the engine.
+ */
+public interface SimulationListener {
+
+    enum Lane { INLINE, ASYNC }
+
+    /** What the stages can look at: live particles in input order, box size and engine (inline stages only). */
+    record Run(List<Particle> particles, double L, CollisionSystemPriorityQueue system) {
+    }
+
+    /**
+     * Processed event number {@code step} at absolute time {@code time}: the wall collision it produced, if any,
+     * and the ids of its particles ({@code second} is -1 for a wall, both are -1 if the queue ran out).
+     */
+    record Event(long step, double time, WallCollisionDTO wall, long first, long second) {
+    }
+
+    /** State before event {@code step + 1}, with the wall collision of event {@code step}, as the output writes it. */
+    record Frame(long step, double time, WallCollisionDTO wall, List<Particle> particles) {
+    }
+
+    default Lane lane() {
+        return Lane.INLINE;
+    }
+
+    /** Frames are only delivered on steps that are a multiple of this; 0 for none. */
+    default int frameInterval() {
+        return 1;
+    }
+
+    /** Events are only delivered to stages that return true, so stages that do not need them cost nothing. */
+    default boolean wantsEvents() {
+        return false;
+    }
+
+    default void onStart(Run run) throws IOException {
+    }
+
+    default void onEvent(Event event) throws IOException {
+    }
+
+    default void onFrame(Frame frame) throws IOException {
+    }
+
+    /** End of the run after {@code step} events; the last hook called. */
+    default void onFinish(long step, double time) throws IOException {
+    }
+
+    /** Report of an accumulator, written at the end time of the run. */
+    interface Report {
+        void write(double time) throws IOException;
+    }
+
+    /** Stage that takes no frames or events and only writes {@code report} when the run ends. */
+    static SimulationListener atFinish(Report report) {
+        return new SimulationListener() {
+            @Override
+            public int frameInterval() {
+                return 0;
+            }
+
+            @Override
+            public void onFinish(long step, double time) throws IOException {
+                report.write(time);
+            }
+        };
+    }
+}
@@ -0,0 +1,142 @@
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Optional "--name" / "--name=value" flags given after the positional arguments of a main,
+ * e.g. {@code java Simulator 300 0.09 1 1000 ./inputs ./outputs --skin=0.001}.
+ * Every feature is off unless its flag is present, so the default run is the plain engine.
+ */
+public class SimulationOptions {
+
+    public static final String SKIN = "skin";
+    public static final String BINARY_OUTPUT = "binary-output";
+    public static final String STATISTICS = "stats";
+    public static final String DETERMINISTIC = "deterministic";
+    public static final String CHECKPOINT = "checkpoint";
+    public static final String SEED = "seed";
+    public static final String MONITOR = "monitor";
+    public static final String LIVE = "live";
+    public static final String REORDER = "reorder";
+    public static final String EPOCH = "epoch";
+    public static final String FLUX = "flux";
+    public static final String WINDOW = "window";
+    public static final String FIELDS = "fields";
+    public static final String VELOCITIES = "velocities";
+    public static final String SHARED = "shared";
+    public static final String MSD = "msd";
+    public static final String TRACK = "track";
+    public static final String ROI = "roi";
+    public static final String KEYFRAMES = "keyframes";
+
+    private final Map<String, String> flags = new HashMap<>();
+
+    public SimulationOptions() {
+    }
+
+    public static SimulationOptions parse(String[] args, int positionalCount) {
+        SimulationOptions options = new SimulationOptions();
+        for (int i = positionalCount; i < args.length; i++) {
+            String arg = args[i];
+            if (!arg.startsWith("--")) {
+                throw new IllegalArgumentException("Unexpected argument: " + arg);
+            }
+            int eq = arg.indexOf('=');
+            if (eq < 0) {
+                options.set(arg.substring(2), "true");
+            } else {
+                options.set(arg.substring(2, eq), arg.substring(eq + 1));
+            }
+        }
+        return options;
+    }
+
+    public SimulationOptions set(String name, String value) {
+        flags.put(name, value);
+        return this;
+    }
+
+    public boolean has(String name) {
+        return flags.containsKey(name);
+    }
+
+    public String getString(String name, String defaultValue) {
+        return flags.getOrDefault(name, defaultValue);
+    }
+
+    public double getDouble(String name, double defaultValue) {
+        String value = valueOf(name);
+        return value == null ? defaultValue : Double.parseDouble(value);
+    }
+
+    public int getInt(String name, int defaultValue) {
+        String value = valueOf(name);
+        return value == null ? defaultValue : Integer.parseInt(value);
+    }
+
+    /**
+     * Value of a numeric flag. A bare flag is stored as "true", so --monitor, --reorder and the like would
+     * fail in the parse; flags with a bare form (--flux, --msd, ...) read it with {@link #getString}.
+     */
+    private String valueOf(String name) {
+        String value = flags.get(name);
+        if ("true".equals(value)) throw new IllegalArgumentException("--" + name + " needs a value");
+        return value;
+    }
+
+    /** Skin distance of the neighbour lists, 0 to scan every particle on each prediction. */
+    public double neighbourSkin() {
+        return getDouble(SKIN, 0.0);
+    }
+
+    /** Frames written as a binary trajectory instead of CSV. */
+    public boolean binaryOutput() {
+        return has(BINARY_OUTPUT);
+    }
+
+    /** Event statistics written next to the output, see {@link EventStatistics}. */
+    public boolean statistics() {
+        return has(STATISTICS);
+    }
+
+    /** Total event ordering and run fingerprints, see {@link Collision#compareTotal} and {@link RunFingerprint}. */
+    public boolean deterministic() {
+        return has(DETERMINISTIC);
+    }
+
+    /** Events between two fingerprint checkpoints. */
+    public int checkpointInterval() {
+        return getInt(CHECKPOINT, 1000);
+    }
+
+    /** Events between two Morton sorts of the engine's particle storage, 0 to keep the input order. */
+    public int reorderInterval() {
+        return getInt(REORDER, 0);
+    }
+
+    /** Simulated time between two rebases of the engine clock, 0 to keep absolute times. */
+    public double epochLength() {
+        return getDouble(EPOCH, 0.0);
+    }
+
+    /** Width of the time bins of {@link DoorFlux}; a bare --flux uses 1. */
+    public double fluxInterval() {
+        String value = getString(FLUX, "1");
+        return value.equals("true") ? 1.0 : Double.parseDouble(value);
+    }
+
+    /** Bins of the histograms of {@link VelocityTracker}; a bare --velocities uses 40. */
+    public int velocityBins() {
+        String value = getString(VELOCITIES, "40");
+        return value.equals("true") ? 40 : Integer.parseInt(value);
+    }
+
+    /** Events between full frames of the output: 1 by default, 1000 when --track or --roi write the rest. */
+    public int keyframeInterval() {
+        return getInt(KEYFRAMES, has(TRACK) || has(ROI) ? 1000 : 1);
+    }
+
+    @Override
+    public String toString() {
+        return "SimulationOptions" + flags;
+    }
+}
@@ -2,6 +2,7 @@ import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.ArrayList;
+import java.util.List;
 import java.util.Locale;
 
 public class Simulator {
@@ -11,31 +12,82 @@ public class Simulator {
     private final CollisionSystemPriorityQueue collisionSystem;
     private Double t = 0.0;
     private final int duration;
+    private final List<Species> species;
+    private final boolean binaryOutput;
+    private final SimulationOptions options;
+    private final List<SimulationListener> listeners;
     private int step;
 
     public Simulator(double L, ArrayList<Particle> particleList, Path outputPath, int simluationDuration) throws IOException {
+        this(L, particleList, outputPath, simluationDuration, new SimulationOptions());
+    }
+
+    public Simulator(double L, ArrayList<Particle> particleList, Path outputPath, int simluationDuration, SimulationOptions options) throws IOException {
+        this(L, particleList, List.of(), outputPath, simluationDuration, options);
+    }
+
+    public Simulator(double L, ArrayList<Particle> particleList, List<Species> species, Path outputPath, int simluationDuration, SimulationOptions options) throws IOException {
+        this(L, particleList, species, outputPath, simluationDuration, options, List.of());
+    }
+
+    /** Runs with extra {@code listeners} after the stages enabled by {@code options}. */
+    public Simulator(double L, ArrayList<Particle> particleList, List<Species> species, Path outputPath, int simluationDuration,
+                     SimulationOptions options, List<SimulationListener> listeners) throws IOException {
         this.L = L;
+        this.listeners = listeners;
         this.particleList = particleList;
+        this.species = species;
+        this.binaryOutput = options.binaryOutput();
+        this.options = options;
         this.duration = simluationDuration;
-        collisionSystem = new CollisionSystemPriorityQueue(particleList, L);
+        collisionSystem = new CollisionSystemPriorityQueue(particleList, L, options);
         executeSimulation(outputPath);
     }
 
     public void executeSimulation(Path outputPath) throws IOException {
         Double prev_t = null;
-        try (OutputWriter out = OutputWriter.open(outputPath)) {
+        try (OutputWriter out = OutputWriter.open(outputPath, species, binaryOutput);
+             RunFingerprint fingerprint = options.deterministic()
+                     ? new RunFingerprint(RunFingerprint.pathFor(outputPath), options.checkpointInterval()) : null;
+             InvariantMonitor monitor = options.has(SimulationOptions.MONITOR)
+                     ? new InvariantMonitor(InvariantMonitor.pathFor(outputPath), particleList, L, options) : null;
+             LiveStream live = options.has(SimulationOptions.LIVE) ? new LiveStream(particleList, L, options) : null;
+             FieldAccumulator fields = options.has(SimulationOptions.FIELDS)
+                     ? new FieldAccumulator(FieldAccumulator.pathFor(outputPath), particleList.size(), L, options) : null;
+             SharedState shared = options.has(SimulationOptions.SHARED)
+                     ? new SharedState(Path.of(options.getString(SimulationOptions.SHARED, "")), particleList, L, options) : null;
+             MeanSquaredDisplacement msd = options.has(SimulationOptions.MSD)
+                     ? new MeanSquaredDisplacement(MeanSquaredDisplacement.pathFor(outputPath), options) : null;
+             TrajectoryFilter track = options.has(SimulationOptions.TRACK) || options.has(SimulationOptions.ROI)
+                     ? new TrajectoryFilter(TrajectoryFilter.pathFor(outputPath), L, options) : null;
+             ListenerPipeline pipeline = new ListenerPipeline(options)) {
+            out.keyframes(options.keyframeInterval());
+            pipeline.add(out).add(track).add(fingerprint).add(monitor).add(live).add(fields).add(shared).add(msd);
+            // Las que el motor mantiene solo escriben al terminar
+            EventStatistics statistics = collisionSystem.getStatistics();
+            DoorFlux flux = collisionSystem.getFlux();
+            VelocityTracker velocities = collisionSystem.getVelocities();
+            if (statistics != null) pipeline.add(statistics.stage(outputPath));
+            if (flux != null) pipeline.add(flux.stage(outputPath));
+            if (velocities != null) pipeline.add(velocities.stage(outputPath));
+            for (SimulationListener listener : listeners) pipeline.add(listener);
+            pipeline.start(new SimulationListener.Run(particleList, L, collisionSystem));
+            WallCollisionDTO wallCollision = collisionSystem.getWallCollision();
             while (collisionSystem.getCurrentTime() < duration && t != null) {
 //                collisionSystem.printState();
 //                collisionSystem.printNextCollision();
 
-                out.writeStep(particleList, t, collisionSystem.getWallCollision());
+                pipeline.frame(step, t, wallCollision, particleList);
                 prev_t = t;
                 t = collisionSystem.nextStep();
 
                 step++;
+                wallCollision = collisionSystem.getWallCollision();
+                pipeline.event(step, collisionSystem.getCurrentTime(), wallCollision, collisionSystem.getLastEvent());
 
 //                printProgress(step, maxT);
             }
+            pipeline.finish(step, collisionSystem.getCurrentTime());
         }
     }
 
@@ -52,24 +104,39 @@ public class Simulator {
         int simulationDuration = Integer.parseInt(args[3]);
         String inputDir = args[4];
         String outputDir = args[5];
+        SimulationOptions options = SimulationOptions.parse(args, 6);
         if (N <= 0 || L <= 0 || iterations <= 0 || simulationDuration <= 0 || inputDir.isEmpty() || outputDir.isEmpty()) {
-            System.out.println("Error: Parameters should be: N, L, iterations, simulationDuration");
+            System.out.println("Error: Parameters should be: N, L, iterations, simulationDuration, inputDir, outputDir [--option=value ...]");
             return;
         }
         for (int i = 0; i < iterations; i++) {
-            InputParser parser = new InputParser(inputDir + "/N" + N + "/input_N" + N + "_" + String.format("%04d", i) + ".txt", N);
-            ArrayList<Particle> particles = parser.parseInputs();
-            System.out.println(particles.size());
-            if (particles.size() != N) {
-                System.out.println("Error: Number of particles does not match the expected amount");
-                return;
-            }
-            String L_dir = String.format(Locale.US, "L%.3f", L);
-            Path directory = Files.createDirectories(Path.of(outputDir, "N_" + N + "_" + L_dir));
-            Path fileName = Path.of(directory + String.format("/output_N%d_%s_t%d_%s.csv", N, L_dir, simulationDuration, String.format("%04d", i)));
             System.out.printf("\nStarting iteration %d/%d...\n", i + 1, iterations);
-            Simulator s = new Simulator(L, particles, fileName, simulationDuration);
+            runIteration(N, L, i, simulationDuration, inputDir, outputDir, options);
             System.out.println("\nIteration " + (i + 1) + " completed.");
         }
     }
+
+    /** Input of an iteration as written by {@link Generator}, the binary one if it exists. */
+    public static Path inputPath(String inputDir, int N, int iteration) {
+        Path binaryInput = Path.of(inputDir, "N" + N, Generator.inputFileName(N, iteration, true));
+        return Files.exists(binaryInput) ? binaryInput : Path.of(inputDir, "N" + N, Generator.inputFileName(N, iteration, false));
+    }
+
+    public static Path outputPath(String outputDir, int N, double L, int simulationDuration, int iteration) {
+        String L_dir = String.format(Locale.US, "L%.3f", L);
+        return Path.of(outputDir, "N_" + N + "_" + L_dir, String.format("output_N%d_%s_t%d_%04d.csv", N, L_dir, simulationDuration, iteration));
+    }
+
+    /**
+     * Runs one iteration with the same file layout as {@link #main} and returns the file its frames were
+     * written to: the .csv output, or the .bin trajectory with --binary-output.
+     */
+    public static Path runIteration(int N, double L, int iteration, int simulationDuration, String inputDir, String outputDir, SimulationOptions options) throws IOException {
+        InputParser parser = new InputParser(inputPath(inputDir, N, iteration).toString(), N);
+        ArrayList<Particle> particles = parser.parseInputs();
+        Path fileName = outputPath(outputDir, N, L, simulationDuration, iteration);
+        Files.createDirectories(fileName.getParent());
+        new Simulator(L, particles, parser.getSpecies(), fileName, simulationDuration, options);
+        return OutputWriter.framesPath(fileName, options.binaryOutput());
+    }
 }
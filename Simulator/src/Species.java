@@ -0,0 +1,13 @@
+/**
+ * A kind of particle in a mixture. Inputs and outputs that declare species refer to particles by this id
+ * instead of repeating radius and mass on every row.
+ */
+public record Species(int id, double radius, double mass) {
+
+    public Species {
+        if (id < 0) throw new IllegalArgumentException("Species id should not be negative: " + id);
+        if (!(radius > 0) || !(mass > 0)) {
+            throw new IllegalArgumentException("Species " + id + " should have positive radius and mass");
+        }
+    }
+}
@@ -0,0 +1,80 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Append-only job table of a sweep. Each line is "millis state jobId [detail]" separated by tabs and the last
+ * line of a job wins, so a run that was killed leaves its jobs in {@link State#RUNNING} and they are run again.
+ * A line torn by the kill is skipped.
+ * Finished jobs are forced to disk before the orchestrator moves on.
+ */
+public class SweepJournal implements AutoCloseable {
+
+    public enum State { RUNNING, DONE, FAILED }
+
+    public record Entry(State state, String detail) {
+    }
+
+    private final FileChannel channel;
+    private final Map<String, Entry> entries = new HashMap<>();
+
+    public SweepJournal(Path path) throws IOException {
+        boolean truncated = false;
+        if (Files.exists(path)) {
+            String content = Files.readString(path, StandardCharsets.UTF_8);
+            truncated = !content.isEmpty() && !content.endsWith("\n");
+            List<String> lines = content.lines().toList();
+            for (String line : lines) {
+                String[] parts = line.split("\t", 4);
+                // Una línea cortada por una interrupción se ignora, su trabajo se vuelve a correr
+                if (parts.length < 3 || !isState(parts[1])) continue;
+                entries.put(parts[2], new Entry(State.valueOf(parts[1]), parts.length == 4 ? parts[3] : ""));
+            }
+        }
+        this.channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+        if (truncated) {
+            channel.write(ByteBuffer.wrap(new byte[]{'\n'}));
+        }
+    }
+
+    private static boolean isState(String name) {
+        for (State state : State.values()) {
+            if (state.name().equals(name)) return true;
+        }
+        return false;
+    }
+
+    public synchronized Entry get(String jobId) {
+        return entries.get(jobId);
+    }
+
+    public synchronized boolean isDone(String jobId) {
+        Entry entry = entries.get(jobId);
+        return entry != null && entry.state() == State.DONE;
+    }
+
+    public synchronized void record(String jobId, State state, String detail) throws IOException {
+        String clean = detail.replace('\t', ' ').replace('\n', ' ');
+        String line = System.currentTimeMillis() + "\t" + state + "\t" + jobId + "\t" + clean + "\n";
+        ByteBuffer buffer = ByteBuffer.wrap(line.getBytes(StandardCharsets.UTF_8));
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        if (state != State.RUNNING) {
+            channel.force(false);
+        }
+        entries.put(jobId, new Entry(state, clean));
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+}
@@ -0,0 +1,195 @@
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs every (N, L, realisation) of a parameter sweep on a pool of in-process workers.
+ * <pre>
+ *   java SweepOrchestrator sweepDir duration --N=300,600 --L=0.03,0.05,0.07,0.09 --realisations=5
+ *        [--workers=4] [--speed=0.01] [--radius=0.0015] [--species=...] [--binary] [--skin=...]
+ * </pre>
+ * Inputs are generated under sweepDir/inputs the first time a realisation needs them and reused for every L.
+ * Outputs follow the {@link Simulator} layout under sweepDir/outputs. Job states are kept in a
+ * {@link SweepJournal}, so running the same command again only runs what is missing or was interrupted.
+ * sweepDir/index.csv lists the finished jobs and their files for the analysis scripts.
+ */
+public class SweepOrchestrator {
+
+    public static final String JOURNAL = "jobs.journal";
+    public static final String INDEX = "index.csv";
+    static final double BOARD_SIZE = 0.09;
+
+    public record Job(int N, double L, int realisation, int duration) {
+        public String id() {
+            return String.format(Locale.US, "N%d_L%.3f_t%d_%04d", N, L, duration, realisation);
+        }
+    }
+
+    private final Path sweepDir;
+    private final List<Job> jobs;
+    private final SimulationOptions options;
+    private final ConcurrentHashMap<String, Object> inputLocks = new ConcurrentHashMap<>();
+
+    public SweepOrchestrator(Path sweepDir, List<Job> jobs, SimulationOptions options) {
+        this.sweepDir = sweepDir;
+        requireUniqueIds(jobs);
+        this.jobs = List.copyOf(jobs);
+        this.options = options;
+    }
+
+    public static List<Job> jobs(int[] Ns, double[] Ls, int realisations, int duration) {
+        List<Job> jobs = new ArrayList<>();
+        for (int N : Ns) {
+            for (double L : Ls) {
+                for (int r = 0; r < realisations; r++) {
+                    jobs.add(new Job(N, L, r, duration));
+                }
+            }
+        }
+        requireUniqueIds(jobs);
+        return jobs;
+    }
+
+    /**
+     * Ids and output files only keep three decimals of L, so two L values that round the same would share
+     * them and the second job would be taken as done without running.
+     */
+    static void requireUniqueIds(List<Job> jobs) {
+        Map<String, Job> seen = new HashMap<>();
+        for (Job job : jobs) {
+            Job other = seen.putIfAbsent(job.id(), job);
+            if (other != null && !other.equals(job)) {
+                throw new IllegalArgumentException("L values " + other.L() + " and " + job.L()
+                        + " give the same job id " + job.id() + ", use values that differ in the first three decimals");
+            }
+        }
+    }
+
+    public Path inputDir() {
+        return sweepDir.resolve("inputs");
+    }
+
+    public Path outputDir() {
+        return sweepDir.resolve("outputs");
+    }
+
+    /** Runs the pending jobs and returns how many failed. */
+    public int run(int workers) throws IOException, InterruptedException {
+        Files.createDirectories(sweepDir);
+        try (SweepJournal journal = new SweepJournal(sweepDir.resolve(JOURNAL))) {
+            List<Job> pending = new ArrayList<>();
+            for (Job job : jobs) {
+                if (!journal.isDone(job.id())) pending.add(job);
+            }
+            System.out.printf("%d jobs, %d already done, %d to run on %d workers%n",
+                    jobs.size(), jobs.size() - pending.size(), pending.size(), workers);
+
+            AtomicInteger finished = new AtomicInteger();
+            AtomicInteger failed = new AtomicInteger();
+            ExecutorService pool = Executors.newFixedThreadPool(workers);
+            for (Job job : pending) {
+                pool.execute(() -> {
+                    boolean ok = runJob(job, journal);
+                    if (!ok) failed.incrementAndGet();
+                    System.out.printf("[%d/%d] %s %s%n", finished.incrementAndGet(), pending.size(), job.id(), ok ? "done" : "FAILED");
+                });
+            }
+            pool.shutdown();
+            while (!pool.awaitTermination(1, TimeUnit.MINUTES)) {
+                System.out.printf("%d/%d jobs finished%n", finished.get(), pending.size());
+            }
+            writeIndex(journal);
+            return failed.get();
+        }
+    }
+
+    private boolean runJob(Job job, SweepJournal journal) {
+        try {
+            journal.record(job.id(), SweepJournal.State.RUNNING, "");
+            ensureInput(job);
+            Path output = Simulator.runIteration(job.N(), job.L(), job.realisation(), job.duration(),
+                    inputDir().toString(), outputDir().toString(), options);
+            journal.record(job.id(), SweepJournal.State.DONE, sweepDir.relativize(output).toString());
+            return true;
+        } catch (Exception e) {
+            try {
+                journal.record(job.id(), SweepJournal.State.FAILED, String.valueOf(e));
+            } catch (IOException ignored) {
+                // El trabajo queda RUNNING en el journal y se reintenta en la próxima corrida
+            }
+            e.printStackTrace();
+            return false;
+        }
+    }
+
+    private void ensureInput(Job job) throws IOException {
+        String key = job.N() + "_" + job.realisation();
+        synchronized (inputLocks.computeIfAbsent(key, k -> new Object())) {
+            if (Files.exists(Simulator.inputPath(inputDir().toString(), job.N(), job.realisation()))) return;
+            Generator generator = Generator.create(job.N(), BOARD_SIZE, options.getDouble("speed", 0.01),
+                    options.getDouble("radius", 0.0015), options);
+            generator.generateInputs(inputDir(), job.realisation());
+        }
+    }
+
+    /** Rewrites sweepDir/index.csv with one row per finished job, paths relative to sweepDir. */
+    private void writeIndex(SweepJournal journal) throws IOException {
+        Path index = sweepDir.resolve(INDEX);
+        Path partial = sweepDir.resolve(INDEX + ".partial");
+        try (BufferedWriter writer = Files.newBufferedWriter(partial, StandardCharsets.UTF_8)) {
+            writer.write("job,N,L,realisation,duration,output,collisions\n");
+            for (Job job : jobs) {
+                if (!journal.isDone(job.id())) continue;
+                String output = journal.get(job.id()).detail();
+                String collisions = OutputWriter.collisionsPath(Path.of(output)).toString();
+                writer.write(String.format(Locale.US, "%s,%d,%.3f,%d,%d,%s,%s%n", job.id(), job.N(), job.L(),
+                        job.realisation(), job.duration(), output, collisions));
+            }
+        }
+        Files.move(partial, index, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    static int[] parseInts(String csv) {
+        return Arrays.stream(csv.split(",")).mapToInt(Integer::parseInt).toArray();
+    }
+
+    static double[] parseDoubles(String csv) {
+        return Arrays.stream(csv.split(",")).mapToDouble(Double::parseDouble).toArray();
+    }
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        if (args.length < 2) {
+            System.out.println("Error: Parameters should be: sweepDir, simulationDuration --N=... --L=... [--realisations=1] [--workers=cores] [--option=value ...]");
+            return;
+        }
+        Path sweepDir = Path.of(args[0]);
+        int duration = Integer.parseInt(args[1]);
+        SimulationOptions options = SimulationOptions.parse(args, 2);
+        if (!options.has("N") || !options.has("L") || duration <= 0) {
+            System.out.println("Error: --N and --L are required and the duration should be positive");
+            return;
+        }
+        List<Job> jobs = jobs(parseInts(options.getString("N", "")), parseDoubles(options.getString("L", "")),
+                options.getInt("realisations", 1), duration);
+        int workers = options.getInt("workers", Runtime.getRuntime().availableProcessors());
+        int failed = new SweepOrchestrator(sweepDir, jobs, options).run(workers);
+        if (failed > 0) {
+            System.out.println(failed + " jobs failed, run the same command again to retry them");
+            System.exit(1);
+        }
+    }
+}
@@ -0,0 +1,361 @@
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.lang.management.ManagementFactory;
+import java.net.InetAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryNotEmptyException;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Properties;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * Sweep workers on several machines that only share a directory. Every state change is a rename within it,
+ * which is atomic on a POSIX filesystem, so there is no coordinator:
+ * <pre>
+ *   java SweepWorker submit sweepDir duration --N=300 --L=0.03,0.05 --realisations=5 [generator flags]
+ *   java SweepWorker work sweepDir [--worker-id=host-pid] [--lease=120] [--heartbeat=10] [--poll=2] [--wait]
+ *        [simulator flags]
+ *   java SweepWorker status sweepDir
+ * </pre>
+ * {@code submit} generates the inputs under sweepDir/inputs and writes one sweepDir/queue/pending/&lt;job&gt;.job
+ * per job that is not queued or finished yet. A worker claims a job by renaming it to
+ * queue/running/&lt;job&gt;.job@&lt;worker&gt;: only one rename of the same file can succeed. While it runs, the worker
+ * touches its lease every --heartbeat seconds; any worker that finds a lease older than --lease seconds renames
+ * it back to pending, so jobs of a dead node run again (leases compare file times, so the clocks of the nodes
+ * must agree within a fraction of --lease).
+ * <p>
+ * Jobs run with the in-process engine in queue/work/&lt;worker&gt;/&lt;job&gt;, which also gets a metrics.properties,
+ * and are published by renaming that directory to results/&lt;job&gt;. The rename fails if the job was already
+ * published, e.g. by a worker that took over an expired lease, so a result is never mixed from two runs.
+ * A job that throws goes to queue/failed with its error; move it back to pending to retry it. After each
+ * result the worker rewrites sweepDir/index.csv, with the columns of {@link SweepOrchestrator}. A worker exits
+ * when nothing is pending or running, or keeps polling with --wait.
+ */
+public class SweepWorker {
+
+    private static final String JOB = ".job";
+
+    private final Path sweepDir;
+    private final String workerId;
+    private final SimulationOptions options;
+    private final long leaseMillis;
+    private final long heartbeatMillis;
+
+    public SweepWorker(Path sweepDir, String workerId, SimulationOptions options) {
+        this.sweepDir = sweepDir;
+        this.workerId = workerId;
+        this.options = options;
+        this.leaseMillis = (long) (options.getDouble("lease", 120) * 1000);
+        this.heartbeatMillis = (long) (options.getDouble("heartbeat", 10) * 1000);
+        if (heartbeatMillis <= 0 || leaseMillis <= 2 * heartbeatMillis) {
+            throw new IllegalArgumentException("The lease should be longer than two heartbeats: " + leaseMillis + " ms, " + heartbeatMillis + " ms");
+        }
+        if (workerId.contains("@") || workerId.contains("/")) throw new IllegalArgumentException("Invalid worker id: " + workerId);
+    }
+
+    private Path pending() {
+        return sweepDir.resolve("queue").resolve("pending");
+    }
+
+    private Path running() {
+        return sweepDir.resolve("queue").resolve("running");
+    }
+
+    private Path failed() {
+        return sweepDir.resolve("queue").resolve("failed");
+    }
+
+    private Path results() {
+        return sweepDir.resolve("results");
+    }
+
+    /** Generates the inputs and queues the jobs that are not queued or finished yet; returns how many. */
+    public static int submit(Path sweepDir, List<SweepOrchestrator.Job> jobs, SimulationOptions options) throws IOException {
+        SweepOrchestrator.requireUniqueIds(jobs);
+        SweepWorker queue = new SweepWorker(sweepDir, "submit", options);
+        for (Path dir : List.of(queue.pending(), queue.running(), queue.failed(), queue.results())) {
+            Files.createDirectories(dir);
+        }
+        Path inputs = sweepDir.resolve("inputs");
+        int submitted = 0;
+        for (SweepOrchestrator.Job job : jobs) {
+            if (Files.exists(queue.results().resolve(job.id())) || queue.isQueued(job.id())) continue;
+            if (!Files.exists(Simulator.inputPath(inputs.toString(), job.N(), job.realisation()))) {
+                Generator.create(job.N(), SweepOrchestrator.BOARD_SIZE, options.getDouble("speed", 0.01),
+                        options.getDouble("radius", 0.0015), options).generateInputs(inputs, job.realisation());
+            }
+            Properties p = new Properties();
+            p.setProperty("N", String.valueOf(job.N()));
+            p.setProperty("L", String.valueOf(job.L()));
+            p.setProperty("realisation", String.valueOf(job.realisation()));
+            p.setProperty("duration", String.valueOf(job.duration()));
+            // Se escribe aparte y se renombra: un worker nunca ve un trabajo a medio escribir
+            Path partial = queue.pending().resolve(job.id() + JOB + ".partial");
+            try (Writer writer = Files.newBufferedWriter(partial, StandardCharsets.UTF_8)) {
+                p.store(writer, null);
+            }
+            Files.move(partial, queue.pending().resolve(job.id() + JOB), StandardCopyOption.ATOMIC_MOVE);
+            submitted++;
+        }
+        return submitted;
+    }
+
+    private boolean isQueued(String jobId) throws IOException {
+        if (Files.exists(pending().resolve(jobId + JOB)) || Files.exists(failed().resolve(jobId + JOB))) return true;
+        try (Stream<Path> leases = Files.list(running())) {
+            return leases.anyMatch(p -> jobOf(p).equals(jobId));
+        }
+    }
+
+    private static String jobOf(Path lease) {
+        String name = lease.getFileName().toString();
+        return name.substring(0, name.indexOf(JOB));
+    }
+
+    /** Claims and runs jobs until none is left (or forever with --wait); returns how many failed here. */
+    public int work() throws IOException, InterruptedException {
+        Files.createDirectories(sweepDir.resolve("queue").resolve("work").resolve(workerId));
+        long pollMillis = (long) (options.getDouble("poll", 2) * 1000);
+        boolean wait = options.has("wait");
+        int done = 0, failures = 0;
+        while (true) {
+            requeueExpired();
+            Path lease = claim();
+            if (lease == null) {
+                if (!wait && isEmpty(pending()) && isEmpty(running())) break;
+                Thread.sleep(pollMillis);
+                continue;
+            }
+            if (runJob(lease)) done++;
+            else failures++;
+        }
+        System.out.printf("Worker %s: %d jobs done, %d failed%n", workerId, done, failures);
+        return failures;
+    }
+
+    private static boolean isEmpty(Path dir) throws IOException {
+        try (Stream<Path> files = Files.list(dir)) {
+            return files.map(p -> p.getFileName().toString()).noneMatch(n -> n.contains(JOB) && !n.endsWith(".partial"));
+        }
+    }
+
+    /** Takes the first pending job that no other worker renamed first, null if there is none. */
+    private Path claim() throws IOException {
+        List<Path> jobs;
+        try (Stream<Path> files = Files.list(pending())) {
+            jobs = files.filter(p -> p.getFileName().toString().endsWith(JOB)).sorted().toList();
+        }
+        for (Path job : jobs) {
+            Path lease = running().resolve(job.getFileName() + "@" + workerId);
+            try {
+                Files.move(job, lease, StandardCopyOption.ATOMIC_MOVE);
+                Files.setLastModifiedTime(lease, FileTime.fromMillis(System.currentTimeMillis()));
+                return lease;
+            } catch (NoSuchFileException e) {
+                // Otro worker lo tomó antes
+            }
+        }
+        return null;
+    }
+
+    /** Puts back the jobs whose lease was not renewed in time. */
+    private void requeueExpired() throws IOException {
+        List<Path> leases;
+        try (Stream<Path> files = Files.list(running())) {
+            leases = files.toList();
+        }
+        long now = System.currentTimeMillis();
+        for (Path lease : leases) {
+            try {
+                if (now - Files.getLastModifiedTime(lease).toMillis() <= leaseMillis) continue;
+                Files.move(lease, pending().resolve(jobOf(lease) + JOB), StandardCopyOption.ATOMIC_MOVE);
+                System.out.printf("Worker %s: lease %s expired, job requeued%n", workerId, lease.getFileName());
+            } catch (NoSuchFileException e) {
+                // Terminó o ya lo devolvió otro worker
+            }
+        }
+    }
+
+    private boolean runJob(Path lease) throws IOException {
+        String jobId = jobOf(lease);
+        Properties p = new Properties();
+        try (Reader reader = Files.newBufferedReader(lease, StandardCharsets.UTF_8)) {
+            p.load(reader);
+        }
+        SweepOrchestrator.Job job = new SweepOrchestrator.Job(Integer.parseInt(p.getProperty("N")),
+                Double.parseDouble(p.getProperty("L")), Integer.parseInt(p.getProperty("realisation")),
+                Integer.parseInt(p.getProperty("duration")));
+        Path work = sweepDir.resolve("queue").resolve("work").resolve(workerId).resolve(jobId);
+        deleteTree(work);
+        Files.createDirectories(work);
+
+        ScheduledExecutorService heartbeat = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "sweep-heartbeat");
+            thread.setDaemon(true);
+            return thread;
+        });
+        heartbeat.scheduleAtFixedRate(() -> {
+            try {
+                Files.setLastModifiedTime(lease, FileTime.fromMillis(System.currentTimeMillis()));
+            } catch (IOException e) {
+                // Se venció y otro worker lo puede estar corriendo: el primero que publique gana
+            }
+        }, heartbeatMillis, heartbeatMillis, TimeUnit.MILLISECONDS);
+        long start = System.currentTimeMillis();
+        try {
+            Path output = Simulator.runIteration(job.N(), job.L(), job.realisation(), job.duration(),
+                    sweepDir.resolve("inputs").toString(), work.toString(), options);
+            long end = System.currentTimeMillis();
+            Properties metrics = new Properties();
+            metrics.setProperty("job", jobId);
+            metrics.setProperty("worker", workerId);
+            p.forEach((k, v) -> metrics.setProperty((String) k, (String) v));
+            metrics.setProperty("started", String.valueOf(start));
+            metrics.setProperty("finished", String.valueOf(end));
+            metrics.setProperty("seconds", String.format(Locale.US, "%.3f", (end - start) / 1000.0));
+            metrics.setProperty("output", work.relativize(output).toString());
+            metrics.setProperty("output_bytes", String.valueOf(Files.size(output)));
+            try (Writer writer = Files.newBufferedWriter(work.resolve("metrics.properties"), StandardCharsets.UTF_8)) {
+                metrics.store(writer, null);
+            }
+            heartbeat.shutdownNow();
+            publish(jobId, work);
+            Files.deleteIfExists(lease);
+            writeIndex();
+            System.out.printf("Worker %s: %s done in %.1f s%n", workerId, jobId, (end - start) / 1000.0);
+            return true;
+        } catch (Exception e) {
+            heartbeat.shutdownNow();
+            try {
+                Files.writeString(failed().resolve(jobId + ".error"), workerId + ": " + e + "\n", StandardCharsets.UTF_8);
+                Files.move(lease, failed().resolve(jobId + JOB), StandardCopyOption.ATOMIC_MOVE);
+            } catch (NoSuchFileException gone) {
+                // El lease ya había vencido: el trabajo sigue en manos de otro worker
+            }
+            deleteTree(work);
+            e.printStackTrace();
+            return false;
+        }
+    }
+
+    /** Renames the work directory to results/&lt;job&gt;; if another run of the job got there first, keeps that one. */
+    private void publish(String jobId, Path work) throws IOException {
+        try {
+            Files.move(work, results().resolve(jobId), StandardCopyOption.ATOMIC_MOVE);
+        } catch (FileAlreadyExistsException | DirectoryNotEmptyException e) {
+            System.out.printf("Worker %s: %s was already published, discarding this run%n", workerId, jobId);
+            deleteTree(work);
+        }
+    }
+
+    /**
+     * Rewrites sweepDir/index.csv from the published results. Another worker may rename an index built from an
+     * older listing over this one, so the results are listed again after the rename and the index rebuilt until
+     * the listing did not change; results are never removed, so the worker that renames last leaves them all.
+     */
+    private void writeIndex() throws IOException {
+        List<Path> done = listResults();
+        while (true) {
+            writeIndex(done);
+            List<Path> now = listResults();
+            if (now.size() == done.size()) return;
+            done = now;
+        }
+    }
+
+    private List<Path> listResults() throws IOException {
+        try (Stream<Path> dirs = Files.list(results())) {
+            return dirs.filter(Files::isDirectory).sorted().toList();
+        }
+    }
+
+    private void writeIndex(List<Path> done) throws IOException {
+        Path partial = sweepDir.resolve(SweepOrchestrator.INDEX + "." + workerId + ".partial");
+        try (BufferedWriter writer = Files.newBufferedWriter(partial, StandardCharsets.UTF_8)) {
+            writer.write("job,N,L,realisation,duration,output,collisions\n");
+            for (Path dir : done) {
+                Path metricsFile = dir.resolve("metrics.properties");
+                if (!Files.exists(metricsFile)) continue;
+                Properties metrics = new Properties();
+                try (Reader reader = Files.newBufferedReader(metricsFile, StandardCharsets.UTF_8)) {
+                    metrics.load(reader);
+                }
+                Path output = dir.resolve(metrics.getProperty("output"));
+                Path collisions = OutputWriter.collisionsPath(output);
+                writer.write(String.format(Locale.US, "%s,%s,%.3f,%s,%s,%s,%s%n", dir.getFileName(), metrics.getProperty("N"),
+                        Double.parseDouble(metrics.getProperty("L")), metrics.getProperty("realisation"),
+                        metrics.getProperty("duration"), sweepDir.relativize(output), sweepDir.relativize(collisions)));
+            }
+        }
+        Files.move(partial, sweepDir.resolve(SweepOrchestrator.INDEX), StandardCopyOption.REPLACE_EXISTING,
+                StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private static void deleteTree(Path dir) throws IOException {
+        if (!Files.exists(dir)) return;
+        List<Path> paths;
+        try (Stream<Path> walk = Files.walk(dir)) {
+            paths = walk.sorted(Comparator.reverseOrder()).toList();
+        }
+        for (Path path : paths) Files.deleteIfExists(path);
+    }
+
+    /** Prints how many jobs are pending, running, failed and done. */
+    public void status() throws IOException {
+        List<String> lines = new ArrayList<>();
+        for (Path dir : List.of(pending(), running(), failed())) {
+            try (Stream<Path> files = Files.list(dir)) {
+                List<String> names = files.map(p -> p.getFileName().toString()).filter(n -> n.contains(JOB))
+                        .filter(n -> !n.endsWith(".partial")).sorted().toList();
+                lines.add(String.format("%-8s %d", dir.getFileName(), names.size()));
+                if (dir.equals(running())) names.forEach(n -> lines.add("  " + n));
+            }
+        }
+        lines.add(String.format("%-8s %d", "done", listResults().size()));
+        lines.forEach(System.out::println);
+    }
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        if (args.length < 2) {
+            System.out.println("Error: Parameters should be: submit sweepDir duration --N=... --L=... | work sweepDir [--option=value ...] | status sweepDir");
+            return;
+        }
+        Path sweepDir = Path.of(args[1]);
+        switch (args[0]) {
+            case "submit" -> {
+                int duration = Integer.parseInt(args[2]);
+                SimulationOptions options = SimulationOptions.parse(args, 3);
+                if (!options.has("N") || !options.has("L") || duration <= 0) {
+                    System.out.println("Error: --N and --L are required and the duration should be positive");
+                    return;
+                }
+                List<SweepOrchestrator.Job> jobs = SweepOrchestrator.jobs(SweepOrchestrator.parseInts(options.getString("N", "")),
+                        SweepOrchestrator.parseDoubles(options.getString("L", "")), options.getInt("realisations", 1), duration);
+                System.out.printf("%d jobs, %d submitted%n", jobs.size(), submit(sweepDir, jobs, options));
+            }
+            case "work" -> {
+                SimulationOptions options = SimulationOptions.parse(args, 2);
+                String id = options.getString("worker-id",
+                        InetAddress.getLocalHost().getHostName() + "-" + ManagementFactory.getRuntimeMXBean().getPid());
+                int failures = new SweepWorker(sweepDir, id, options).work();
+                if (failures > 0) System.exit(1);
+            }
+            case "status" -> new SweepWorker(sweepDir, "status", new SimulationOptions()).status();
+            default -> System.out.println("Error: unknown command " + args[0] + ", should be submit, work or status");
+        }
+    }
+}
@@ -0,0 +1,131 @@
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Frames of only the particles being analysed, to output_*_track.csv: the ones whose id is in --track (e.g.
+ * {@code 0-9,42}) and the ones inside the rectangle of --roi ({@code x0,y0,x1,y1}, or {@code door[:depth]}
+ * for the aperture and {@code depth}, L by default, on both sides of it), every --track-interval events (1 by
+ * default). Each row is "time,id,x,y,vx,vy,radius", the time at full precision and the rest as
+ * {@link OutputWriter} writes it, so the file grows with the particles selected instead of with N; the full
+ * system goes to the usual output every --keyframes events.
+ */
+public class TrajectoryFilter implements AutoCloseable, SimulationListener {
+
+    public static final String FILE_SUFFIX = "_track.csv";
+
+    private final CsvFormatter csv;
+    private final int interval;
+    private final List<long[]> idRanges;
+    private final double[] region;
+    // Posiciones en la lista de partículas de los ids seguidos
+    private int[] tracked;
+    private boolean[] isTracked;
+
+    public TrajectoryFilter(Path path, double L, SimulationOptions options) throws IOException {
+        this.interval = options.getInt("track-interval", 1);
+        if (interval <= 0) throw new IllegalArgumentException("Track interval should be positive: " + interval);
+        this.idRanges = parseIds(options.getString(SimulationOptions.TRACK, ""));
+        this.region = options.has(SimulationOptions.ROI) ? parseRegion(options.getString(SimulationOptions.ROI, ""), L) : null;
+        this.csv = new CsvFormatter(path);
+        csv.text("time,id,x,y,vx,vy,radius").newLine();
+    }
+
+    public static Path pathFor(Path outputPath) {
+        return OutputWriter.siblingPath(outputPath, FILE_SUFFIX);
+    }
+
+    /** "0-9,42" as inclusive ranges; "true" (a bare --track) selects nothing. */
+    static List<long[]> parseIds(String value) {
+        List<long[]> ranges = new ArrayList<>();
+        if (value.isEmpty() || value.equals("true")) return ranges;
+        for (String part : value.split(",")) {
+            int dash = part.indexOf('-', 1);
+            long from = Long.parseLong(part.substring(0, dash < 0 ? part.length() : dash).trim());
+            long to = dash < 0 ? from : Long.parseLong(part.substring(dash + 1).trim());
+            if (from < 0 || to < from) throw new IllegalArgumentException("Invalid id range: " + part);
+            ranges.add(new long[]{from, to});
+        }
+        return ranges;
+    }
+
+    /** {x0, y0, x1, y1} of "x0,y0,x1,y1" or of "door[:depth]" in the enclosure of aperture {@code L}. */
+    static double[] parseRegion(String value, double L) {
+        if (value.equals("door") || value.startsWith("door:")) {
+            double depth = value.equals("door") ? L : Double.parseDouble(value.substring(5));
+            if (!(depth > 0)) throw new IllegalArgumentException("Door depth should be positive: " + value);
+            Enclosure enclosure = new Enclosure(0.0, 0.0, L);
+            double door = enclosure.getMinX() + enclosure.getWidth();
+            return new double[]{door - depth, enclosure.getDoorMinY(), door + depth, enclosure.getDoorMaxY()};
+        }
+        String[] parts = value.split(",");
+        if (parts.length != 4) throw new IllegalArgumentException("Region should be x0,y0,x1,y1 or door: " + value);
+        double[] region = new double[4];
+        for (int k = 0; k < 4; k++) region[k] = Double.parseDouble(parts[k].trim());
+        if (!(region[0] < region[2]) || !(region[1] < region[3])) {
+            throw new IllegalArgumentException("Empty region: " + value);
+        }
+        return region;
+    }
+
+    @Override
+    public int frameInterval() {
+        return interval;
+    }
+
+    @Override
+    public void onStart(Run run) {
+        List<Particle> particles = run.particles();
+        Map<Long, Integer> index = new HashMap<>();
+        for (int i = 0; i < particles.size(); i++) index.put(particles.get(i).getId(), i);
+        isTracked = new boolean[particles.size()];
+        for (long[] range : idRanges) {
+            for (long id = range[0]; id <= range[1]; id++) {
+                Integer i = index.get(id);
+                if (i == null) throw new IllegalArgumentException("No particle with id " + id + " to track");
+                isTracked[i] = true;
+            }
+        }
+        // Sin repetidos y en el orden de la entrada, como la salida completa
+        int n = 0;
+        for (boolean t : isTracked) if (t) n++;
+        tracked = new int[n];
+        n = 0;
+        for (int i = 0; i < isTracked.length; i++) if (isTracked[i]) tracked[n++] = i;
+    }
+
+    @Override
+    public void onFrame(Frame frame) throws IOException {
+        List<Particle> particles = frame.particles();
+        if (region == null) {
+            for (int i : tracked) write(frame.time(), particles.get(i));
+        } else {
+            // La región mira a todas; las seguidas se escriben aunque estén fuera
+            for (int i = 0; i < particles.size(); i++) {
+                Particle p = particles.get(i);
+                if (isTracked[i] || inRegion(p)) write(frame.time(), p);
+            }
+        }
+    }
+
+    private boolean inRegion(Particle p) {
+        double x = p.getX(), y = p.getY();
+        return x >= region[0] && x <= region[2] && y >= region[1] && y <= region[3];
+    }
+
+    private void write(double time, Particle p) throws IOException {
+        csv.general17(time).comma().integer(p.getId()).comma()
+                .general17(p.getX()).comma().general17(p.getY()).comma()
+                .general17(p.getVx()).comma().general17(p.getVy()).comma()
+                .fixed(p.getRadius(), 5).newLine();
+        csv.flushIfFull();
+    }
+
+    @Override
+    public void close() throws IOException {
+        csv.close();
+    }
+}
@@ -0,0 +1,131 @@
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Reads the frames written by {@link OutputWriter} one at a time, either the CSV output or the binary
+ * trajectory of --binary-output. For mixtures the species id of each row is replaced by its radius,
+ * so every {@link Frame} has x, y, vx, vy, radius per particle.
+ */
+public abstract class TrajectoryReader implements AutoCloseable {
+
+    public record Frame(double time, double[] values) {
+        public int size() {
+            return values.length / BinaryParticleFormat.FIELDS;
+        }
+    }
+
+    protected final List<Species> species = new ArrayList<>();
+
+    public static TrajectoryReader open(Path path) throws IOException {
+        return BinaryParticleFormat.isBinary(path) ? new Binary(path) : new Text(path);
+    }
+
+    /** Next frame of the file, or null at the end. */
+    public abstract Frame next() throws IOException;
+
+    @Override
+    public abstract void close() throws IOException;
+
+    public List<Species> getSpecies() {
+        return List.copyOf(species);
+    }
+
+    protected double radius(double value) {
+        if (species.isEmpty()) return value;
+        int id = (int) value;
+        if (id != value || id < 0 || id >= species.size()) {
+            throw new IllegalArgumentException("Unknown species " + value);
+        }
+        return species.get(id).radius();
+    }
+
+    private static class Text extends TrajectoryReader {
+        private final Path path;
+        private final BufferedReader reader;
+        private String pending;
+        private long lineNumber;
+
+        Text(Path path) throws IOException {
+            this.path = path;
+            this.reader = Files.newBufferedReader(path, StandardCharsets.UTF_8);
+            // Cabecera "#species,id,radio,masa" de las mezclas
+            while ((pending = readLine()) != null && pending.startsWith("#species")) {
+                String[] parts = pending.split(",");
+                species.add(new Species(species.size(), Double.parseDouble(parts[2]), Double.parseDouble(parts[3])));
+            }
+        }
+
+        private String readLine() throws IOException {
+            lineNumber++;
+            return reader.readLine();
+        }
+
+        @Override
+        public Frame next() throws IOException {
+            while (pending != null && pending.isBlank()) pending = readLine();
+            if (pending == null) return null;
+            if (pending.indexOf(',') >= 0) {
+                throw new IllegalArgumentException(path + ":" + lineNumber + ": expected a time line");
+            }
+            double time = Double.parseDouble(pending.trim());
+            double[] values = new double[16 * BinaryParticleFormat.FIELDS];
+            int size = 0;
+            while ((pending = readLine()) != null && (pending.isBlank() || pending.indexOf(',') >= 0)) {
+                if (pending.isBlank()) continue;
+                String[] parts = pending.split(",");
+                if (parts.length != BinaryParticleFormat.FIELDS) {
+                    throw new IllegalArgumentException(path + ":" + lineNumber + ": expected " + BinaryParticleFormat.FIELDS + " columns");
+                }
+                if (size + BinaryParticleFormat.FIELDS > values.length) values = Arrays.copyOf(values, values.length * 2);
+                for (int f = 0; f < 4; f++) values[size + f] = Double.parseDouble(parts[f]);
+                values[size + 4] = radius(Double.parseDouble(parts[4]));
+                size += BinaryParticleFormat.FIELDS;
+            }
+            return new Frame(time, Arrays.copyOf(values, size));
+        }
+
+        @Override
+        public void close() throws IOException {
+            reader.close();
+        }
+    }
+
+    private static class Binary extends TrajectoryReader {
+        private final FileChannel channel;
+        private final ByteBuffer buffer;
+        private final int count;
+
+        Binary(Path path) throws IOException {
+            this.channel = FileChannel.open(path, StandardOpenOption.READ);
+            this.count = BinaryParticleFormat.readTrajectoryHeader(channel, species);
+            this.buffer = ByteBuffer.allocateDirect(BinaryParticleFormat.frameBytes(count)).order(ByteOrder.LITTLE_ENDIAN);
+        }
+
+        @Override
+        public Frame next() throws IOException {
+            if (!BinaryParticleFormat.readFully(channel, buffer)) return null;
+            double time = buffer.getDouble();
+            double[] values = new double[count * BinaryParticleFormat.FIELDS];
+            buffer.asDoubleBuffer().get(values);
+            for (int i = 4; i < values.length; i += BinaryParticleFormat.FIELDS) {
+                values[i] = radius(values[i]);
+            }
+            return new Frame(time, values);
+        }
+
+        @Override
+        public void close() throws IOException {
+            channel.close();
+        }
+    }
+}
@@ -0,0 +1,246 @@
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Velocity distributions and kinetic temperature of each chamber (--velocities[=&lt;bins&gt;], 40 by default),
+ * kept while the engine runs so the approach to Maxwell–Boltzmann can be checked without the trajectory.
+ * <p>
+ * Speeds only change when an event is resolved, and chambers only when a particle crosses the door plane, so
+ * each of those moves one particle between bins and costs O(1): a bin adds count × elapsed time to its
+ * integral only when its count changes, which gives exact time-weighted histograms of speed, vx, vy and
+ * kinetic energy per chamber. {@link #write} stores them in output_*_velocities.csv
+ * ("chamber,quantity,low,high,fraction,theory") and the time-averaged temperatures in
+ * output_*_temperature.csv, with the total variation distance to the theoretical distribution.
+ * <p>
+ * In 2D kT is the mean kinetic energy, and ½ m |v|² follows exp(-ε / kT) / kT whatever the mass, so the
+ * energy histogram has a theory for mixtures too; speed and components only have one when all the masses are
+ * equal. Bins cover 4 times the initial rms speed and 15 times the initial mean energy; values past the last
+ * bin are counted in it.
+ */
+public class VelocityTracker {
+
+    public static final String FILE_SUFFIX = "_velocities.csv";
+    public static final String TEMPERATURE_SUFFIX = "_temperature.csv";
+
+    private static final String[] CHAMBERS = {"left", "right"};
+
+    private final double door;
+    private final int bins;
+    private final double maxSpeed, maxEnergy;
+    // La masa común, NaN si hay más de una
+    private final double mass;
+    // Por cámara
+    private final Histogram[] speed = new Histogram[2], vx = new Histogram[2], vy = new Histogram[2], energy = new Histogram[2];
+    private final Integral[] count = new Integral[2], totalEnergy = new Integral[2];
+    // Estado actual de cada partícula, por su índice en la lista de la corrida
+    private final int[] chamber, speedBin, vxBin, vyBin, energyBin;
+    private final double[] kinetic;
+
+    public VelocityTracker(List<Particle> particles, Enclosure enclosure, int bins, double time) {
+        if (bins <= 0) throw new IllegalArgumentException("Velocity bins should be positive: " + bins);
+        this.door = enclosure.getMinX() + enclosure.getWidth();
+        this.bins = bins;
+        int n = particles.size();
+        double squares = 0, energies = 0;
+        boolean sameMass = true;
+        for (Particle p : particles) {
+            double v2 = p.getVx() * p.getVx() + p.getVy() * p.getVy();
+            squares += v2;
+            energies += 0.5 * p.getMass() * v2;
+            sameMass &= p.getMass() == particles.get(0).getMass();
+        }
+        this.mass = sameMass && n > 0 ? particles.get(0).getMass() : Double.NaN;
+        this.maxSpeed = n == 0 || squares == 0 ? 1.0 : 4 * Math.sqrt(squares / n);
+        this.maxEnergy = n == 0 || energies == 0 ? 1.0 : 15 * energies / n;
+        for (int c = 0; c < 2; c++) {
+            speed[c] = new Histogram(bins);
+            vx[c] = new Histogram(bins);
+            vy[c] = new Histogram(bins);
+            energy[c] = new Histogram(bins);
+            count[c] = new Integral();
+            totalEnergy[c] = new Integral();
+        }
+        chamber = new int[n];
+        speedBin = new int[n];
+        vxBin = new int[n];
+        vyBin = new int[n];
+        energyBin = new int[n];
+        kinetic = new double[n];
+        for (int i = 0; i < n; i++) {
+            set(i, particles.get(i), time, false);
+        }
+    }
+
+    /** The engine stored the state of particle {@code i} at {@code time}, normally just after resolving an event. */
+    public void update(int i, Particle p, double time) {
+        set(i, p, time, true);
+    }
+
+    /** Particle {@code i} flew from {@code from} to {@code to} with velocity {@code vx} in a flight that started at {@code start}. */
+    public void flight(int i, double from, double to, double vx, double start) {
+        if ((from < door) == (to < door)) return;
+        double time = start + (door - from) / vx;
+        remove(i, time);
+        chamber[i] = 1 - chamber[i];
+        add(i, time);
+    }
+
+    private void set(int i, Particle p, double time, boolean present) {
+        if (present) remove(i, time);
+        double v2 = p.getVx() * p.getVx() + p.getVy() * p.getVy();
+        chamber[i] = p.getX() < door ? 0 : 1;
+        speedBin[i] = bin(Math.sqrt(v2), 0, maxSpeed);
+        vxBin[i] = bin(p.getVx(), -maxSpeed, maxSpeed);
+        vyBin[i] = bin(p.getVy(), -maxSpeed, maxSpeed);
+        kinetic[i] = 0.5 * p.getMass() * v2;
+        energyBin[i] = bin(kinetic[i], 0, maxEnergy);
+        add(i, time);
+    }
+
+    private void remove(int i, double time) {
+        move(i, time, -1);
+    }
+
+    private void add(int i, double time) {
+        move(i, time, 1);
+    }
+
+    private void move(int i, double time, int delta) {
+        int c = chamber[i];
+        speed[c].change(speedBin[i], time, delta);
+        vx[c].change(vxBin[i], time, delta);
+        vy[c].change(vyBin[i], time, delta);
+        energy[c].change(energyBin[i], time, delta);
+        count[c].change(time, delta);
+        totalEnergy[c].change(time, delta * kinetic[i]);
+    }
+
+    private int bin(double value, double min, double max) {
+        int b = (int) Math.floor((value - min) / (max - min) * bins);
+        return Math.max(0, Math.min(bins - 1, b));
+    }
+
+    /** Current kinetic temperature (mean kinetic energy) of the left (0) or right (1) chamber, NaN if empty. */
+    public double getTemperature(int chamber) {
+        return count[chamber].value == 0 ? Double.NaN : totalEnergy[chamber].value / count[chamber].value;
+    }
+
+    /** Writes the histograms and the temperatures time-averaged up to {@code endTime}. */
+    public void write(Path outputPath, double endTime) throws IOException {
+        double[] temperature = new double[2], energyDistance = new double[2], speedDistance = new double[2];
+        try (BufferedWriter out = Files.newBufferedWriter(pathFor(outputPath), StandardCharsets.UTF_8)) {
+            out.write("chamber,quantity,low,high,fraction,theory\n");
+            for (int c = 0; c < 2; c++) {
+                double time = count[c].at(endTime);
+                temperature[c] = time == 0 ? Double.NaN : totalEnergy[c].at(endTime) / time;
+                double kT = temperature[c];
+                energyDistance[c] = write(out, c, "energy", energy[c], 0, maxEnergy, endTime,
+                        (lo, hi) -> Math.exp(-lo / kT) - Math.exp(-hi / kT));
+                // Con una sola masa: |v| de Maxwell 2D y componentes gaussianas de varianza kT/m
+                speedDistance[c] = write(out, c, "speed", speed[c], 0, maxSpeed, endTime,
+                        (lo, hi) -> Math.exp(-mass * lo * lo / (2 * kT)) - Math.exp(-mass * hi * hi / (2 * kT)));
+                double sigma = Math.sqrt(kT / mass);
+                write(out, c, "vx", vx[c], -maxSpeed, maxSpeed, endTime, (lo, hi) -> gaussian(lo, hi, sigma));
+                write(out, c, "vy", vy[c], -maxSpeed, maxSpeed, endTime, (lo, hi) -> gaussian(lo, hi, sigma));
+            }
+        }
+        try (BufferedWriter out = Files.newBufferedWriter(temperaturePathFor(outputPath), StandardCharsets.UTF_8)) {
+            out.write("chamber,mean_particles,temperature,final_temperature,energy_distance,speed_distance\n");
+            for (int c = 0; c < 2; c++) {
+                out.write(String.format(Locale.US, "%s,%.6e,%.6e,%.6e,%.6e,%.6e%n", CHAMBERS[c],
+                        endTime > 0 ? count[c].at(endTime) / endTime : count[c].value, temperature[c],
+                        getTemperature(c), energyDistance[c], speedDistance[c]));
+            }
+        }
+    }
+
+    private interface BinTheory {
+        double probability(double low, double high);
+    }
+
+    /** Writes one histogram and returns its total variation distance to {@code theory} (NaN without one). */
+    private double write(BufferedWriter out, int c, String quantity, Histogram h, double min, double max,
+                         double endTime, BinTheory theory) throws IOException {
+        double total = 0;
+        for (int b = 0; b < bins; b++) total += h.at(b, endTime);
+        double distance = 0;
+        double width = (max - min) / bins;
+        for (int b = 0; b < bins; b++) {
+            double low = min + b * width;
+            // El último bin se lleva la cola que quedó afuera, igual que el conteo
+            double high = b == bins - 1 ? Double.POSITIVE_INFINITY : low + width;
+            double lowTail = b == 0 && min < 0 ? Double.NEGATIVE_INFINITY : low;
+            double fraction = total == 0 ? 0 : h.at(b, endTime) / total;
+            double expected = theory.probability(lowTail, high);
+            distance += Math.abs(fraction - expected);
+            out.write(String.format(Locale.US, "%s,%s,%.6e,%.6e,%.6e,%.6e%n", CHAMBERS[c], quantity, low, low + width,
+                    fraction, expected));
+        }
+        return distance / 2;
+    }
+
+    /** Probability of [low, high) for a centred normal with deviation {@code sigma}. */
+    private static double gaussian(double low, double high, double sigma) {
+        return 0.5 * (erf(high / (sigma * Math.sqrt(2))) - erf(low / (sigma * Math.sqrt(2))));
+    }
+
+    /** Abramowitz–Stegun 7.1.26, error below 1.5e-7. */
+    private static double erf(double x) {
+        if (Double.isInfinite(x)) return Math.signum(x);
+        double t = 1 / (1 + 0.3275911 * Math.abs(x));
+        double y = 1 - t * (0.254829592 + t * (-0.284496736 + t * (1.421413741 + t * (-1.453152027 + t * 1.061405429))))
+                * Math.exp(-x * x);
+        return Math.copySign(y, x);
+    }
+
+    /** Pipeline stage that writes the histograms and temperatures next to {@code outputPath} when the run ends. */
+    public SimulationListener stage(Path outputPath) {
+        return SimulationListener.atFinish(time -> write(outputPath, time));
+    }
+
+    public static Path pathFor(Path outputPath) {
+        return OutputWriter.siblingPath(outputPath, FILE_SUFFIX);
+    }
+
+    public static Path temperaturePathFor(Path outputPath) {
+        return OutputWriter.siblingPath(outputPath, TEMPERATURE_SUFFIX);
+    }
+
+    /** Value that changes at given times, with its integral over time kept up to the last change. */
+    private static final class Integral {
+        double value, integral, last;
+
+        void change(double time, double delta) {
+            // Exacto aunque los cambios lleguen desordenados dentro de un avance: la suma telescopa
+            integral += value * (time - last);
+            last = time;
+            value += delta;
+        }
+
+        double at(double time) {
+            return integral + value * (time - last);
+        }
+    }
+
+    private static final class Histogram {
+        final Integral[] bins;
+
+        Histogram(int size) {
+            bins = new Integral[size];
+            for (int b = 0; b < size; b++) bins[b] = new Integral();
+        }
+
+        void change(int bin, double time, int delta) {
+            bins[bin].change(time, delta);
+        }
+
+        double at(int bin, double time) {
+            return bins[bin].at(time);
+        }
+    }
+}
@@ -2,7 +2,7 @@ public class WallCollision extends Collision {
 
     private final Wall wall;
 
-    public WallCollision(Particle p1, Wall wall, Double time) {
+    public WallCollision(Particle p1, Wall wall, double time) {
         super(p1, time);
         this.wall = wall;
     }
@@ -10,6 +10,16 @@ public class WallCollision extends Collision {
         return  wall;
     }
 
+    @Override
+    protected int typeOrder() {
+        return 1;
+    }
+
+    @Override
+    protected long secondKey() {
+        return wall.ordinal();
+    }
+
     @Override
     public WallCollisionDTO resolve() {
         Particle p = getP1();
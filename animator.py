@@ -25,8 +25,11 @@ def load_timesteps_stream(path):
     """
     Devuelve lista de (t, [(x,y,r,vx,vy), ...]) por frame.
     Asume que el N es constante (como N_300).
+    Si el archivo empieza con líneas '#species,id,radio,masa' (mezclas), la última
+    columna de cada partícula es la especie y se reemplaza por su radio.
     """
     frames = []
+    species_radius = {}
     with open(path, "r") as f:
         current_t = None
         current = []
@@ -34,6 +37,10 @@ def load_timesteps_stream(path):
             line = raw.strip()
             if not line:
                 continue
+            if line.startswith("#species"):
+                _, sid, radius, _mass = line.split(",")
+                species_radius[int(sid)] = float(radius)
+                continue
             # Línea de tiempo: solo número (ej. 0.0000)
             if re.match(r"^[+-]?\d+(\.\d+)?(e[+-]?\d+)?$", line, flags=re.IGNORECASE):
                 if current_t is not None and current:
@@ -45,6 +52,8 @@ def load_timesteps_stream(path):
                 if len(parts) < 5:
                     continue
                 x, y, vx, vy, r = map(float, parts[:5])
+                if species_radius:
+                    r = species_radius[int(r)]
                 current.append((x, y, r, vx, vy))
         # último bloque
         if current_t is not None and current: